@@ -0,0 +1,287 @@
+package com.dellemc.desdp.demo;
+
+import io.pravega.client.ClientConfig;
+import io.pravega.client.admin.StreamManager;
+import io.pravega.client.stream.ScalingPolicy;
+import io.pravega.client.stream.StreamConfiguration;
+import io.pravega.local.InProcPravegaCluster;
+import org.HdrHistogram.Histogram;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.jobgraph.JobGraph;
+import org.apache.flink.runtime.minicluster.MiniCluster;
+import org.apache.flink.runtime.minicluster.MiniClusterConfiguration;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.sink.DiscardingSink;
+import org.apache.flink.streaming.api.functions.sink.SinkFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark on a single box: starts an in-process Pravega cluster and a Flink MiniCluster, runs the reader's
+ * running-count pipeline with {@link LatencySink} in place of Elasticsearch, and drives {@link SongPlayGenerator} at
+ * each target rate in turn. For every rate it reports the plays per second the generator got acknowledged and the
+ * reader counted, and the end-to-end latency percentiles, and stops at the first rate the pipeline cannot sustain.
+ * The saturation point is the highest rate it sustained.
+ * <p>
+ * Run with {@code ./gradlew benchmark -PbenchmarkArgs="--rates 10000,50000,100000"}.
+ */
+public class EndToEndBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(EndToEndBenchmark.class);
+
+    public static final String DEFAULT_RATES = "1000,2000,5000,10000,20000,50000,100000,200000";
+    public static final int DEFAULT_STEP_SECONDS = 30;
+    public static final int DEFAULT_WARMUP_SECONDS = 10;
+    public static final int DEFAULT_PARALLELISM = 2;
+    public static final int DEFAULT_SEGMENTS = 4;
+    public static final int DEFAULT_THREADS = 2;
+    public static final double DEFAULT_MIN_RATIO = 0.95;
+    public static final long DEFAULT_MAX_P99 = 1000; // ms
+
+    private static final String SCOPE = "benchmark";
+    private static final String STREAM = "plays";
+
+    public static void main(String[] args) throws Exception {
+        CommandLine commandLine = new DefaultParser().parse(options(), args);
+        if (commandLine.hasOption('h')) {
+            new HelpFormatter().printHelp(EndToEndBenchmark.class.getSimpleName(), options(), true);
+            return;
+        }
+
+        List<Double> rates = new ArrayList<>();
+        for (String rate : commandLine.getOptionValue("rates", DEFAULT_RATES).split(",")) {
+            rates.add(Double.parseDouble(rate.trim()));
+        }
+        int stepSeconds = Integer.parseInt(commandLine.getOptionValue("step-seconds", "" + DEFAULT_STEP_SECONDS));
+        int warmupSeconds = Integer.parseInt(commandLine.getOptionValue("warmup-seconds", "" + DEFAULT_WARMUP_SECONDS));
+        int parallelism = Integer.parseInt(commandLine.getOptionValue("parallelism", "" + DEFAULT_PARALLELISM));
+        int segments = Integer.parseInt(commandLine.getOptionValue("segments", "" + DEFAULT_SEGMENTS));
+        int threads = Integer.parseInt(commandLine.getOptionValue("threads", "" + DEFAULT_THREADS));
+        double minRatio = Double.parseDouble(commandLine.getOptionValue("min-ratio", "" + DEFAULT_MIN_RATIO));
+        long maxP99 = Long.parseLong(commandLine.getOptionValue("max-p99", "" + DEFAULT_MAX_P99));
+        EventFormat eventFormat = EventFormat.valueOf(commandLine.getOptionValue("event-format", "json").toUpperCase());
+        boolean preAggregate = commandLine.hasOption("pre-aggregate");
+        boolean sql = commandLine.hasOption("sql");
+        if (warmupSeconds >= stepSeconds) throw new IllegalArgumentException("warmup must be shorter than a step");
+
+        int controllerPort = freePort(), zkPort = freePort();
+        InProcPravegaCluster pravega = InProcPravegaCluster.builder()
+                .isInProcZK(true)
+                .zkUrl("localhost:" + zkPort)
+                .zkPort(zkPort)
+                .isInMemStorage(true)
+                .isInProcController(true)
+                .controllerCount(1)
+                .restServerPort(freePort())
+                .enableRestServer(false)
+                .isInProcSegmentStore(true)
+                .segmentStoreCount(1)
+                .containerCount(4)
+                .enableMetrics(false)
+                .enableAuth(false)
+                .enableTls(false)
+                .build();
+        pravega.setControllerPorts(new int[]{controllerPort});
+        pravega.setSegmentStorePorts(new int[]{freePort()});
+        pravega.start();
+        String controller = "tcp://localhost:" + controllerPort;
+        createStream(controller, segments);
+
+        MiniCluster flink = new MiniCluster(new MiniClusterConfiguration.Builder()
+                .setConfiguration(new Configuration())
+                .setNumTaskManagers(1)
+                .setNumSlotsPerTaskManager(parallelism)
+                .build());
+        flink.start();
+
+        try {
+            JobGraph job = readerJob(controller, parallelism, preAggregate, sql);
+            flink.submitJob(job).get();
+
+            List<Step> steps = new ArrayList<>();
+            for (double rate : rates) {
+                Step step = runStep(controller, rate, threads, eventFormat, warmupSeconds, stepSeconds);
+                step.sustained = step.readRate >= rate * minRatio && step.p99 <= maxP99;
+                steps.add(step);
+                log.info("{}", step);
+                if (!step.sustained) break;
+            }
+            report(steps);
+
+            flink.cancelJob(job.getJobID()).get();
+        } finally {
+            flink.close();
+            pravega.close();
+        }
+    }
+
+    static JobGraph readerJob(String controller, int parallelism, boolean preAggregate, boolean sql) throws IOException {
+        SongPlayReader.Config config = new SongPlayReader.Config();
+        config.setControllerEndpoint(controller);
+        config.setScope(SCOPE);
+        config.setStream(STREAM);
+        // event time carries each play's creation time through the counts to the sink
+        config.setEventTime(true);
+        config.setPreAggregate(preAggregate);
+        config.setSql(sql);
+        config.setPrint(false);
+
+        StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
+        env.setParallelism(parallelism);
+        SongPlayReader.buildPipeline(env, config, new SongPlayReader.ResultSinks() {
+            @Override
+            public SinkFunction<Tuple2<Integer, Integer>> runningCounts(SongPlayReader.Config config, Catalog catalog) {
+                return new LatencySink();
+            }
+
+            @Override
+            public SinkFunction<ArtistWindowCount> topArtists(SongPlayReader.Config config, Catalog catalog) {
+                return new DiscardingSink<>();
+            }
+
+            @Override
+            public SinkFunction<SongWindowCount> topSongs(SongPlayReader.Config config, Catalog catalog) {
+                return new DiscardingSink<>();
+            }
+        });
+        return env.getStreamGraph().getJobGraph();
+    }
+
+    static Step runStep(String controller, double rate, int threads, EventFormat eventFormat, int warmupSeconds,
+                        int stepSeconds) throws InterruptedException {
+        SongPlayGenerator.Config config = new SongPlayGenerator.Config();
+        config.setControllerEndpoint(controller);
+        config.setScope(SCOPE);
+        config.setStream(STREAM);
+        config.setXput(rate);
+        config.setThreads(threads);
+        config.setEventFormat(eventFormat);
+        config.setMetricsInterval(stepSeconds);
+
+        SongPlayGenerator generator = new SongPlayGenerator(config);
+        Thread generatorThread = new Thread(generator::run, "generator");
+        generatorThread.start();
+        try {
+            // let the pipeline settle at the new rate, then measure from a clean interval
+            TimeUnit.SECONDS.sleep(warmupSeconds);
+            LatencySink.LATENCY.reset();
+            long plays = LatencySink.PLAYS.sum();
+            long acked = generator.getMetrics().getEventsAcked();
+            long start = System.nanoTime();
+
+            TimeUnit.SECONDS.sleep(stepSeconds - warmupSeconds);
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            Histogram latency = LatencySink.LATENCY.getIntervalHistogram();
+            Step step = new Step(rate);
+            step.ackedRate = (generator.getMetrics().getEventsAcked() - acked) / seconds;
+            step.readRate = (LatencySink.PLAYS.sum() - plays) / seconds;
+            step.p50 = latency.getValueAtPercentile(50);
+            step.p99 = latency.getValueAtPercentile(99);
+            step.p999 = latency.getValueAtPercentile(99.9);
+            step.max = latency.getMaxValue();
+            return step;
+        } finally {
+            generator.stop();
+            generatorThread.join();
+        }
+    }
+
+    static void report(List<Step> steps) {
+        System.out.println();
+        System.out.printf("%12s %12s %12s %8s %8s %8s %8s  %s%n",
+                "target/s", "acked/s", "counted/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "sustained");
+        double saturation = 0;
+        for (Step step : steps) {
+            System.out.printf("%12.0f %12.0f %12.0f %8d %8d %8d %8d  %s%n", step.rate, step.ackedRate, step.readRate,
+                    step.p50, step.p99, step.p999, step.max, step.sustained ? "yes" : "no");
+            if (step.sustained) saturation = step.rate;
+        }
+        boolean saturated = !steps.isEmpty() && !steps.get(steps.size() - 1).sustained;
+        System.out.println();
+        if (!saturated) System.out.printf("sustained every rate up to %.0f plays/s; saturation is higher%n", saturation);
+        else if (saturation > 0) System.out.printf("saturation point: %.0f plays/s%n", saturation);
+        else System.out.println("saturated at the lowest rate");
+    }
+
+    private static void createStream(String controller, int segments) {
+        try (StreamManager streamManager = StreamManager.create(ClientConfig.builder().controllerURI(URI.create(controller)).build())) {
+            streamManager.createScope(SCOPE);
+            streamManager.createStream(SCOPE, STREAM, StreamConfiguration.builder()
+                    .scalingPolicy(ScalingPolicy.fixed(segments))
+                    .build());
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static Options options() {
+        Options options = new Options();
+        options.addOption(Option.builder("h").longOpt("help").desc("Print this help text").build());
+        options.addOption(Option.builder().longOpt("rates").desc("Comma-separated target rates to step through. Default is " + DEFAULT_RATES)
+                .hasArg().argName("events-per-second").build());
+        options.addOption(Option.builder().longOpt("step-seconds").desc("Duration of each rate step. Default is " + DEFAULT_STEP_SECONDS)
+                .hasArg().argName("seconds").build());
+        options.addOption(Option.builder().longOpt("warmup-seconds").desc("Part of each step not measured. Default is " + DEFAULT_WARMUP_SECONDS)
+                .hasArg().argName("seconds").build());
+        options.addOption(Option.builder().longOpt("parallelism").desc("Reader parallelism (and task slots). Default is " + DEFAULT_PARALLELISM)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("segments").desc("Fixed number of stream segments. Default is " + DEFAULT_SEGMENTS)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("threads").desc("Generator producer threads. Default is " + DEFAULT_THREADS)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("event-format").desc("json or binary. Default is json")
+                .hasArg().argName("format").build());
+        options.addOption(Option.builder().longOpt("pre-aggregate").desc("Pre-aggregate counts in the reader")
+                .build());
+        options.addOption(Option.builder().longOpt("sql").desc("Count with the reader's SQL pipeline instead of its DataStream operators")
+                .build());
+        options.addOption(Option.builder().longOpt("min-ratio").desc("A rate is sustained if the reader counts at least this fraction of it. Default is " + DEFAULT_MIN_RATIO)
+                .hasArg().argName("ratio").build());
+        options.addOption(Option.builder().longOpt("max-p99").desc("A rate is sustained if p99 end-to-end latency stays within this. Default is " + DEFAULT_MAX_P99)
+                .hasArg().argName("millis").build());
+        return options;
+    }
+
+    static class Step {
+        final double rate;
+        double ackedRate;
+        double readRate;
+        long p50, p99, p999, max;
+        boolean sustained;
+
+        Step(double rate) {
+            this.rate = rate;
+        }
+
+        @Override
+        public String toString() {
+            return "Step{" +
+                    "rate=" + rate +
+                    ", ackedRate=" + ackedRate +
+                    ", readRate=" + readRate +
+                    ", p50=" + p50 +
+                    ", p99=" + p99 +
+                    ", p999=" + p999 +
+                    ", max=" + max +
+                    ", sustained=" + sustained +
+                    '}';
+        }
+    }
+}
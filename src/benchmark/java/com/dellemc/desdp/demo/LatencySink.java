@@ -0,0 +1,35 @@
+package com.dellemc.desdp.demo;
+
+import org.HdrHistogram.Recorder;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.streaming.api.functions.sink.SinkFunction;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stand-in for the Elasticsearch sink of the running counts. Measures end-to-end latency as the time from the event
+ * timestamp the generator embedded (carried as the Flink record timestamp in event-time mode) until the updated count
+ * reaches the sink, and counts the plays the updates account for, also when counts are pre-aggregated.
+ * <p>
+ * The harness runs Flink in the same JVM, so the results are collected in static fields the harness reads.
+ */
+public class LatencySink implements SinkFunction<Tuple2<Integer, Integer>> {
+    static final Recorder LATENCY = new Recorder(3); // ms
+    static final LongAdder PLAYS = new LongAdder();
+
+    // last running count written per artist; counts are keyed by artist, and SongPlayReader.toResultSinks keys them
+    // by artist again when the sinks have another parallelism, so each artist always reaches the same sink subtask
+    private transient Map<Integer, Integer> lastCounts;
+
+    @Override
+    public void invoke(Tuple2<Integer, Integer> count, Context context) {
+        if (lastCounts == null) lastCounts = new HashMap<>();
+        Integer last = lastCounts.put(count.f0, count.f1);
+        PLAYS.add(count.f1 - (last == null ? 0 : last));
+
+        Long timestamp = context.timestamp();
+        if (timestamp != null) LATENCY.recordValue(Math.max(0, System.currentTimeMillis() - timestamp));
+    }
+}
@@ -0,0 +1,115 @@
+package com.dellemc.desdp.demo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.flink.api.java.tuple.Tuple3;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reader hot path: turning the bytes of one event into something the job can count. The original job deserialized to
+ * a String and bound it to {@link JSONDataCustom} with a new {@code ObjectMapper} per record, kept here as
+ * {@link OriginalRowSplitter}; {@link SongPlayReader.RowSplitter} now shares one reader, and the job itself decodes
+ * straight to a {@link PlayEvent}. Events are drawn from a pre-encoded sample of songs and players so every iteration
+ * parses different bytes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+    private static final int SAMPLE_SIZE = 1024; // a power of 2
+
+    private byte[][] jsonEvents = new byte[SAMPLE_SIZE][];
+    private String[] jsonStrings = new String[SAMPLE_SIZE];
+    private byte[][] binaryEvents = new byte[SAMPLE_SIZE][];
+    private int next;
+
+    private UTF8StringDeserializationSchema stringSchema = new UTF8StringDeserializationSchema();
+    private SongPlayReader.RowSplitter rowSplitter = new SongPlayReader.RowSplitter();
+    private OriginalRowSplitter originalRowSplitter = new OriginalRowSplitter();
+    private ObjectReader jsonReader = new ObjectMapper().readerFor(JSONDataCustom.class);
+    private PlayEventDeserializationSchema playEventSchema;
+
+    @Setup
+    public void setup() {
+        Catalog catalog = Catalog.getDefault();
+        playEventSchema = new PlayEventDeserializationSchema(catalog);
+        PlayEventEncoder jsonEncoder = EventFormat.JSON.createEncoder(catalog);
+        PlayEventEncoder binaryEncoder = EventFormat.BINARY.createEncoder(catalog);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            int playerId = random.nextInt(SongPlayGenerator.DEFAULT_PLAYERS) + 1;
+            int songId = random.nextInt(catalog.getSongCount());
+            long timestamp = System.currentTimeMillis();
+            jsonEvents[i] = encode(jsonEncoder, playerId, songId, timestamp);
+            jsonStrings[i] = stringSchema.deserialize(jsonEvents[i]);
+            binaryEvents[i] = encode(binaryEncoder, playerId, songId, timestamp);
+        }
+    }
+
+    private static byte[] encode(PlayEventEncoder encoder, int playerId, int songId, long timestamp) {
+        ByteBuffer buffer = ByteBuffer.allocate(encoder.encodedLength(playerId, songId, timestamp));
+        encoder.encode(playerId, songId, timestamp, buffer);
+        return buffer.array();
+    }
+
+    private int nextIndex() {
+        return next++ & (SAMPLE_SIZE - 1);
+    }
+
+    @Benchmark
+    public String utf8String() {
+        return stringSchema.deserialize(jsonEvents[nextIndex()]);
+    }
+
+    @Benchmark
+    public JSONDataCustom jsonDataCustomBinding() throws IOException {
+        return jsonReader.readValue(jsonStrings[nextIndex()]);
+    }
+
+    @Benchmark
+    public Tuple3<String, String, String> originalRowSplitter() throws Exception {
+        return originalRowSplitter.map(jsonStrings[nextIndex()]);
+    }
+
+    @Benchmark
+    public Tuple3<String, String, String> rowSplitter() throws Exception {
+        return rowSplitter.map(jsonStrings[nextIndex()]);
+    }
+
+    // the original pipeline end to end: bytes to String, then String to Tuple3
+    @Benchmark
+    public Tuple3<String, String, String> utf8StringAndOriginalRowSplitter() throws Exception {
+        return originalRowSplitter.map(stringSchema.deserialize(jsonEvents[nextIndex()]));
+    }
+
+    @Benchmark
+    public PlayEvent playEventJson() {
+        return playEventSchema.deserialize(jsonEvents[nextIndex()]);
+    }
+
+    @Benchmark
+    public PlayEvent playEventBinary() {
+        return playEventSchema.deserialize(binaryEvents[nextIndex()]);
+    }
+
+    /**
+     * The original job's {@code RowSplitter}, which builds a new {@code ObjectMapper} for every record.
+     */
+    private static class OriginalRowSplitter {
+        Tuple3<String, String, String> map(String row) throws Exception {
+            JSONDataCustom obj = new ObjectMapper().readValue(row, JSONDataCustom.class);
+            return new Tuple3<>(obj.playerId, obj.song, obj.artist);
+        }
+    }
+}
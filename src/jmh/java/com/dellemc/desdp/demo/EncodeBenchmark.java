@@ -0,0 +1,74 @@
+package com.dellemc.desdp.demo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generator hot path: building one play event ready for {@code writeEvent}. The string-based methods are the original
+ * generator; the encoders are what it uses now, including the per-event buffer allocation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+public class EncodeBenchmark {
+    private SongPlayGenerator generator;
+    private PlayEventEncoder jsonEncoder;
+    private PlayEventEncoder binaryEncoder;
+    private int songCount;
+
+    @Setup
+    public void setup() {
+        generator = new SongPlayGenerator(new SongPlayGenerator.Config());
+        Catalog catalog = Catalog.getDefault();
+        jsonEncoder = EventFormat.JSON.createEncoder(catalog);
+        binaryEncoder = EventFormat.BINARY.createEncoder(catalog);
+        songCount = catalog.getSongCount();
+    }
+
+    @Benchmark
+    public String generatePlayerId() {
+        return generator.generatePlayerId();
+    }
+
+    @Benchmark
+    public String generatePlayMessage() {
+        return generator.generatePlayMessage(generator.generatePlayerId());
+    }
+
+    // what the original generator handed to a String serializer
+    @Benchmark
+    public byte[] generatePlayMessageBytes() {
+        return generator.generatePlayMessage(generator.generatePlayerId()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeJson() {
+        return encode(jsonEncoder);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBinary() {
+        return encode(binaryEncoder);
+    }
+
+    private ByteBuffer encode(PlayEventEncoder encoder) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int playerId = random.nextInt(SongPlayGenerator.DEFAULT_PLAYERS) + 1;
+        int songId = random.nextInt(songCount);
+        long timestamp = System.currentTimeMillis();
+        ByteBuffer message = ByteBuffer.allocate(encoder.encodedLength(playerId, songId, timestamp));
+        encoder.encode(playerId, songId, timestamp, message);
+        message.flip();
+        return message;
+    }
+}
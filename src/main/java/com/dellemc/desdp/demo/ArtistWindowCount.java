@@ -0,0 +1,36 @@
+package com.dellemc.desdp.demo;
+
+import java.io.Serializable;
+
+/**
+ * The play count and approximate number of distinct listeners of one artist in one window. In the top-N output,
+ * {@link #rank} is the artist's position (1 is the most played); it is 0 before ranking.
+ */
+public class ArtistWindowCount implements Serializable {
+    public int artistId;
+    public long windowEnd;
+    public long count;
+    public long listeners;
+    public int rank;
+
+    public ArtistWindowCount() {
+    }
+
+    public ArtistWindowCount(int artistId, long windowEnd, long count, long listeners) {
+        this.artistId = artistId;
+        this.windowEnd = windowEnd;
+        this.count = count;
+        this.listeners = listeners;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "artistId=" + artistId +
+                ", windowEnd=" + windowEnd +
+                ", count=" + count +
+                ", listeners=" + listeners +
+                ", rank=" + rank +
+                '}';
+    }
+}
@@ -0,0 +1,125 @@
+package com.dellemc.desdp.demo;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The song catalog, with dense integer IDs for songs and artists. Song IDs are line numbers in the catalog file
+ * ({@code song::artist} per line, songs.lst by default); artist IDs are assigned in order of first appearance. The
+ * generator and reader both refer to songs and artists by these IDs, and only translate back to names at the edges.
+ */
+public class Catalog implements Serializable {
+    static final String DEFAULT_RESOURCE = "/songs.lst";
+
+    private static volatile Catalog _default;
+
+    private final String[] songs; // by song ID
+    private final String[] artists; // by artist ID
+    private final int[] songArtists; // artist ID by song ID
+    private transient volatile Map<String, Integer> _songIds; // rebuilt on first use after deserialization
+
+    Catalog(List<String> songs, List<String> artists, int[] songArtists) {
+        this.songs = songs.toArray(new String[0]);
+        this.artists = artists.toArray(new String[0]);
+        this.songArtists = songArtists;
+    }
+
+    static Catalog getDefault() {
+        if (_default == null) {
+            synchronized (Catalog.class) {
+                if (_default == null) {
+                    _default = load(null);
+                }
+            }
+        }
+        return _default;
+    }
+
+    /**
+     * Loads a catalog from a file, or the bundled songs.lst if {@code file} is null.
+     */
+    static Catalog load(String file) {
+        try (InputStream in = file == null ? Catalog.class.getResourceAsStream(DEFAULT_RESOURCE) : new FileInputStream(file);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            List<String> songs = new ArrayList<>();
+            List<String> artists = new ArrayList<>();
+            List<Integer> songArtists = new ArrayList<>();
+            Map<String, Integer> artistIds = new HashMap<>();
+            Set<String> titles = new HashSet<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                String[] parts = line.split("::");
+                if (parts.length != 2) throw new IllegalArgumentException("invalid catalog line: " + line);
+                // songs are looked up by title, so a title may only appear once
+                if (!titles.add(parts[0])) throw new IllegalArgumentException("duplicate song in catalog: " + parts[0]);
+                Integer artistId = artistIds.get(parts[1]);
+                if (artistId == null) {
+                    artistId = artists.size();
+                    artists.add(parts[1]);
+                    artistIds.put(parts[1], artistId);
+                }
+                songs.add(parts[0]);
+                songArtists.add(artistId);
+            }
+            return new Catalog(songs, artists, songArtists.stream().mapToInt(Integer::intValue).toArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not load catalog " + (file == null ? DEFAULT_RESOURCE : file), e);
+        }
+    }
+
+    public int getSongCount() {
+        return songs.length;
+    }
+
+    public int getArtistCount() {
+        return artists.length;
+    }
+
+    public String getSong(int songId) {
+        return songs[songId];
+    }
+
+    public String getArtist(int artistId) {
+        return artists[artistId];
+    }
+
+    public int getArtistId(int songId) {
+        return songArtists[songId];
+    }
+
+    /**
+     * @return the ID of the song with this title, or -1 if it is not in the catalog
+     */
+    public int getSongId(String song) {
+        Integer songId = getSongIds().get(song);
+        return songId == null ? -1 : songId;
+    }
+
+    private Map<String, Integer> getSongIds() {
+        if (_songIds == null) {
+            synchronized (this) {
+                if (_songIds == null) {
+                    Map<String, Integer> songIds = new HashMap<>(songs.length * 2);
+                    for (int i = 0; i < songs.length; i++) {
+                        songIds.put(songs[i], i); // titles are unique, load() checks
+                    }
+                    _songIds = songIds;
+                }
+            }
+        }
+        return _songIds;
+    }
+}
@@ -0,0 +1,90 @@
+package com.dellemc.desdp.demo;
+
+import org.apache.flink.api.common.io.RichOutputFormat;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.connectors.elasticsearch.RequestIndexer;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestClientBuilder;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.IOException;
+
+/**
+ * Writes the results of a batch job to Elasticsearch, as requests built by the same
+ * {@link SongPlayReader.ElasticsearchResultFunction}s the streaming sinks use, so both modes produce the same
+ * documents and bulk latency metrics. Flink 1.7 has no Elasticsearch output format for DataSets. Requests are sent
+ * in bulks of {@code bulkActions}; a bulk with failed items fails the job.
+ */
+public class ElasticsearchOutputFormat<T> extends RichOutputFormat<T> {
+    private final HttpHost host;
+    private final int bulkActions;
+    private final SongPlayReader.ElasticsearchResultFunction<T> sinkFunction;
+
+    private transient RestHighLevelClient client;
+    private transient BulkRequest bulk;
+    private transient RequestIndexer indexer;
+
+    public ElasticsearchOutputFormat(HttpHost host, int bulkActions, SongPlayReader.ElasticsearchResultFunction<T> sinkFunction) {
+        this.host = host;
+        this.bulkActions = bulkActions;
+        this.sinkFunction = sinkFunction;
+    }
+
+    @Override
+    public void configure(Configuration parameters) {
+    }
+
+    @Override
+    public void open(int taskNumber, int numTasks) {
+        RestClientBuilder restClientBuilder = RestClient.builder(host);
+        SongPlayReader.configureRestClient(restClientBuilder, sinkFunction.getBulkLatency());
+        client = new RestHighLevelClient(restClientBuilder);
+        bulk = new BulkRequest();
+        indexer = new BulkIndexer();
+    }
+
+    @Override
+    public void writeRecord(T record) throws IOException {
+        sinkFunction.process(record, getRuntimeContext(), indexer);
+        if (bulk.numberOfActions() >= bulkActions) flush();
+    }
+
+    private void flush() throws IOException {
+        if (bulk.numberOfActions() == 0) return;
+        BulkResponse response = client.bulk(bulk);
+        if (response.hasFailures()) throw new IOException("bulk request failed: " + response.buildFailureMessage());
+        bulk = new BulkRequest();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (bulk != null) flush();
+        } finally {
+            if (client != null) client.close();
+        }
+    }
+
+    private class BulkIndexer implements RequestIndexer {
+        @Override
+        public void add(DeleteRequest... deleteRequests) {
+            for (DeleteRequest request : deleteRequests) bulk.add(request);
+        }
+
+        @Override
+        public void add(IndexRequest... indexRequests) {
+            for (IndexRequest request : indexRequests) bulk.add(request);
+        }
+
+        @Override
+        public void add(UpdateRequest... updateRequests) {
+            for (UpdateRequest request : updateRequests) bulk.add(request);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.dellemc.desdp.demo;
+
+/**
+ * Wire formats for play events. The reader detects the format of each event on its own (binary events start with
+ * {@link BinaryPlayEventEncoder#MAGIC}, which can't start a JSON document), so streams holding both can be read.
+ */
+public enum EventFormat {
+    JSON {
+        @Override
+        PlayEventEncoder createEncoder(Catalog catalog) {
+            return new JsonPlayEventEncoder(catalog);
+        }
+    },
+    BINARY {
+        @Override
+        PlayEventEncoder createEncoder(Catalog catalog) {
+            return new BinaryPlayEventEncoder(catalog.getSongCount());
+        }
+    };
+
+    abstract PlayEventEncoder createEncoder(Catalog catalog);
+}
@@ -0,0 +1,279 @@
+package com.dellemc.desdp.demo;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Counters and write acknowledgement latency of the generator. Worker threads record into lock-free adders and an
+ * HdrHistogram recorder; {@link #report()} is called periodically to compute the rate and latency percentiles of the
+ * past interval and log them as one summary line. The same values are exposed over JMX and in Prometheus text format.
+ * In transactional mode an event counts as acknowledged when its transaction is committed, and the commits and aborts
+ * and the latency of the commit call are recorded too.
+ */
+public class GeneratorMetrics implements GeneratorMetricsMBean {
+    private static final Logger log = LoggerFactory.getLogger(GeneratorMetrics.class);
+
+    static final String OBJECT_NAME = "com.dellemc.desdp.demo:type=SongPlayGenerator";
+
+    private final DoubleSupplier targetRate;
+    private final LongAdder eventsWritten = new LongAdder();
+    private final LongAdder eventsAcked = new LongAdder();
+    private final LongAdder bytesAcked = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+    private final LongAdder writeRetries = new LongAdder();
+    private final Recorder ackLatency = new Recorder(3); // micros
+    private final LongAdder ackLatencySum = new LongAdder(); // micros, since the start
+    private final LongAdder txnCommitted = new LongAdder();
+    private final LongAdder txnAborted = new LongAdder();
+    private final Recorder commitLatency = new Recorder(3); // micros
+    private final LongAdder commitLatencySum = new LongAdder(); // micros, since the start
+
+    // state of the last report, read by JMX and the metrics endpoint
+    private Histogram interval;
+    private Histogram commitInterval;
+    private long lastReportNanos = System.nanoTime();
+    private long lastAcked;
+    private volatile double actualRate;
+    private volatile long p50, p99, p999, max;
+    private volatile long commitP50, commitP99, commitMax;
+
+    public GeneratorMetrics(DoubleSupplier targetRate) {
+        this.targetRate = targetRate;
+    }
+
+    void written() {
+        eventsWritten.increment();
+    }
+
+    void retried() {
+        writeRetries.increment();
+    }
+
+    /**
+     * Records the final outcome of a write that was first submitted at {@code startNanos}.
+     */
+    void acked(long startNanos, int bytes, Throwable failure) {
+        if (failure != null) {
+            writeFailures.increment();
+            return;
+        }
+        eventsAcked.increment();
+        bytesAcked.add(bytes);
+        long latency = micros(System.nanoTime() - startNanos);
+        ackLatency.recordValue(latency);
+        ackLatencySum.add(latency);
+    }
+
+    /**
+     * Records a transaction opened at {@code startNanos} whose commit call started at {@code commitStartNanos} and has
+     * just returned. Its events all become visible with the commit, so each is recorded with the transaction's age.
+     */
+    void committed(int events, long bytes, long startNanos, long commitStartNanos) {
+        long now = System.nanoTime();
+        txnCommitted.increment();
+        eventsAcked.add(events);
+        bytesAcked.add(bytes);
+        if (events > 0) {
+            long latency = micros(now - startNanos);
+            ackLatency.recordValueWithCount(latency, events);
+            ackLatencySum.add(latency * events);
+        }
+        long commit = micros(now - commitStartNanos);
+        commitLatency.recordValue(commit);
+        commitLatencySum.add(commit);
+    }
+
+    void aborted(int events) {
+        txnAborted.increment();
+        writeFailures.add(events);
+    }
+
+    private static long micros(long nanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * Closes the current interval and logs a summary of it.
+     */
+    synchronized void report() {
+        long now = System.nanoTime();
+        long acked = eventsAcked.sum();
+        actualRate = (acked - lastAcked) * 1e9 / Math.max(1, now - lastReportNanos);
+        lastAcked = acked;
+        lastReportNanos = now;
+
+        interval = ackLatency.getIntervalHistogram(interval);
+        p50 = interval.getValueAtPercentile(50);
+        p99 = interval.getValueAtPercentile(99);
+        p999 = interval.getValueAtPercentile(99.9);
+        max = interval.getMaxValue();
+
+        log.info("acked {} events/s (target {}), {} written, {} acked, {} in flight, {} bytes, {} retried, {} failed; ack latency us p50 {} p99 {} p99.9 {} max {}",
+                String.format("%.1f", actualRate), String.format("%.1f", getTargetRate()), getEventsWritten(), acked,
+                getInFlight(), getBytesAcked(), getWriteRetries(), getWriteFailures(), p50, p99, p999, max);
+
+        commitInterval = commitLatency.getIntervalHistogram(commitInterval);
+        commitP50 = commitInterval.getValueAtPercentile(50);
+        commitP99 = commitInterval.getValueAtPercentile(99);
+        commitMax = commitInterval.getMaxValue();
+        if (getTxnCommitted() + getTxnAborted() > 0) {
+            log.info("{} transactions committed, {} aborted; commit latency us p50 {} p99 {} max {}",
+                    getTxnCommitted(), getTxnAborted(), commitP50, commitP99, commitMax);
+        }
+    }
+
+    void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            log.warn("could not register generator metrics with JMX", e);
+        }
+    }
+
+    void unregisterMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            log.debug("could not unregister generator metrics from JMX", e);
+        }
+    }
+
+    /**
+     * @return the metrics in the Prometheus text exposition format. Latencies are summaries: their quantiles cover the
+     * last interval, their {@code _count} and {@code _sum} everything recorded since the start, so rates and averages
+     * can be derived from them like from any Prometheus summary.
+     */
+    String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        metric(out, "music_generator_events_written_total", "counter", "Events submitted to the writer", getEventsWritten());
+        metric(out, "music_generator_events_acked_total", "counter", "Events acknowledged by Pravega", getEventsAcked());
+        metric(out, "music_generator_bytes_acked_total", "counter", "Event bytes acknowledged by Pravega", getBytesAcked());
+        metric(out, "music_generator_in_flight", "gauge", "Events written but not yet acknowledged or failed", getInFlight());
+        metric(out, "music_generator_write_retries_total", "counter", "Write attempts that failed and were retried", getWriteRetries());
+        metric(out, "music_generator_write_failures_total", "counter", "Writes that failed after all retries", getWriteFailures());
+        metric(out, "music_generator_target_rate", "gauge", "Target events per second", getTargetRate());
+        metric(out, "music_generator_actual_rate", "gauge", "Acknowledged events per second in the last interval", getActualRate());
+        metric(out, "music_generator_txn_committed_total", "counter", "Transactions committed", getTxnCommitted());
+        metric(out, "music_generator_txn_aborted_total", "counter", "Transactions aborted", getTxnAborted());
+        summary(out, "music_generator_ack_latency_microseconds", "Write acknowledgement latency",
+                new String[]{"0.5", "0.99", "0.999", "1"}, new long[]{p50, p99, p999, max},
+                getEventsAcked(), ackLatencySum.sum());
+        summary(out, "music_generator_commit_latency_microseconds", "Transaction commit latency",
+                new String[]{"0.5", "0.99", "1"}, new long[]{commitP50, commitP99, commitMax},
+                getTxnCommitted(), commitLatencySum.sum());
+        return out.toString();
+    }
+
+    private static void metric(StringBuilder out, String name, String type, String help, double value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String help, String[] quantiles, long[] values,
+                                long count, long sum) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" summary\n");
+        for (int i = 0; i < quantiles.length; i++) {
+            out.append(name).append("{quantile=\"").append(quantiles[i]).append("\"} ")
+                    .append(values[i]).append('\n');
+        }
+        out.append(name).append("_sum ").append(sum).append('\n');
+        out.append(name).append("_count ").append(count).append('\n');
+    }
+
+    @Override
+    public long getEventsWritten() {
+        return eventsWritten.sum();
+    }
+
+    @Override
+    public long getEventsAcked() {
+        return eventsAcked.sum();
+    }
+
+    @Override
+    public long getBytesAcked() {
+        return bytesAcked.sum();
+    }
+
+    @Override
+    public long getWriteFailures() {
+        return writeFailures.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        // not an atomic snapshot, so it may be off by the writes completing meanwhile
+        return Math.max(0, getEventsWritten() - getEventsAcked() - getWriteFailures());
+    }
+
+    @Override
+    public long getWriteRetries() {
+        return writeRetries.sum();
+    }
+
+    @Override
+    public long getTxnCommitted() {
+        return txnCommitted.sum();
+    }
+
+    @Override
+    public long getTxnAborted() {
+        return txnAborted.sum();
+    }
+
+    @Override
+    public double getTargetRate() {
+        return targetRate.getAsDouble();
+    }
+
+    @Override
+    public double getActualRate() {
+        return actualRate;
+    }
+
+    @Override
+    public long getAckLatencyP50Micros() {
+        return p50;
+    }
+
+    @Override
+    public long getAckLatencyP99Micros() {
+        return p99;
+    }
+
+    @Override
+    public long getAckLatencyP999Micros() {
+        return p999;
+    }
+
+    @Override
+    public long getAckLatencyMaxMicros() {
+        return max;
+    }
+
+    @Override
+    public long getCommitLatencyP50Micros() {
+        return commitP50;
+    }
+
+    @Override
+    public long getCommitLatencyP99Micros() {
+        return commitP99;
+    }
+
+    @Override
+    public long getCommitLatencyMaxMicros() {
+        return commitMax;
+    }
+}
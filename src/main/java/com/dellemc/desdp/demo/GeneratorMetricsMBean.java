@@ -0,0 +1,41 @@
+package com.dellemc.desdp.demo;
+
+/**
+ * JMX view of {@link GeneratorMetrics}. Rates and latencies cover the most recent reporting interval.
+ */
+public interface GeneratorMetricsMBean {
+
+    long getEventsWritten();
+
+    long getEventsAcked();
+
+    long getBytesAcked();
+
+    long getInFlight();
+
+    long getWriteRetries();
+
+    long getWriteFailures();
+
+    long getTxnCommitted();
+
+    long getTxnAborted();
+
+    double getTargetRate();
+
+    double getActualRate();
+
+    long getAckLatencyP50Micros();
+
+    long getAckLatencyP99Micros();
+
+    long getAckLatencyP999Micros();
+
+    long getAckLatencyMaxMicros();
+
+    long getCommitLatencyP50Micros();
+
+    long getCommitLatencyP99Micros();
+
+    long getCommitLatencyMaxMicros();
+}
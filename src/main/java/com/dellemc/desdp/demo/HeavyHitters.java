@@ -0,0 +1,110 @@
+package com.dellemc.desdp.demo;
+
+import java.io.Serializable;
+
+/**
+ * The most frequent keys of a stream in fixed memory: a {@link CountMinSketch} estimates the count of every key, and a
+ * min-heap of {@code capacity} candidates keeps the keys with the largest estimates seen so far. A key replaces the
+ * smallest candidate once its estimate exceeds that candidate's, so a key that is among the most frequent is a
+ * candidate at the end unless more than {@code capacity} keys are estimated to be at least as frequent. Memory does not
+ * depend on the number of distinct keys.
+ * <p>
+ * Also the partial result of one window in one aggregation subtask, with the window and the bucket of keys it covers,
+ * so the partial results can be merged across subtasks. A public no-arg constructor and public fields keep this a
+ * Flink POJO.
+ */
+public class HeavyHitters implements Serializable {
+    public CountMinSketch sketch;
+    // a min-heap by count of the candidate keys and their estimates when they were last updated
+    public int[] keys;
+    public long[] counts;
+    public int size;
+    public int bucket;
+    public long windowEnd;
+
+    public HeavyHitters() {
+    }
+
+    public HeavyHitters(int capacity, int width, int depth) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be greater than 0");
+        sketch = new CountMinSketch(width, depth);
+        keys = new int[capacity];
+        counts = new long[capacity];
+    }
+
+    public void add(int key) {
+        offer(key, sketch.add(key));
+    }
+
+    /**
+     * Folds {@code other} into this, which then tracks the keys of both.
+     */
+    public HeavyHitters merge(HeavyHitters other) {
+        sketch.merge(other.sketch);
+        // the estimates of the current candidates grew too, so rebuild the heap from scratch
+        int[] candidates = new int[size + other.size];
+        System.arraycopy(keys, 0, candidates, 0, size);
+        System.arraycopy(other.keys, 0, candidates, size, other.size);
+        size = 0;
+        for (int key : candidates) {
+            offer(key, sketch.estimate(key));
+        }
+        return this;
+    }
+
+    /**
+     * Inserts or updates {@code key} with its current estimate if it is among the largest.
+     */
+    void offer(int key, long count) {
+        // the common case for a long tail: a key whose estimate can't displace anything needs no lookup, since a
+        // candidate's stored count is never above its estimate
+        if (size == keys.length && count <= counts[0]) return;
+        for (int i = 0; i < size; i++) {
+            if (keys[i] == key) {
+                counts[i] = Math.max(counts[i], count);
+                siftDown(i);
+                return;
+            }
+        }
+        if (size < keys.length) {
+            keys[size] = key;
+            counts[size] = count;
+            siftUp(size++);
+        } else {
+            keys[0] = key;
+            counts[0] = count;
+            siftDown(0);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (counts[parent] <= counts[i]) return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) smallest = left;
+            if (right < size && counts[right] < counts[smallest]) smallest = right;
+            if (smallest == i) return;
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+    }
+}
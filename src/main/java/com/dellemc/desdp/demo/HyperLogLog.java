@@ -0,0 +1,75 @@
+package com.dellemc.desdp.demo;
+
+import java.io.Serializable;
+
+/**
+ * HyperLogLog sketch for approximate distinct counts in fixed memory: 2^precision one-byte registers (4 KB at the
+ * default precision of 12), with a standard error of about 1.04 / sqrt(2^precision), 1.6% at precision 12. Sketches
+ * of the same precision merge losslessly, so partial sketches from different subtasks or windows can be combined.
+ * <p>
+ * A public no-arg constructor and public field keep this a Flink POJO, so it is stored in state as a plain byte array.
+ */
+public class HyperLogLog implements Serializable {
+    public static final int DEFAULT_PRECISION = 12;
+
+    public byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) throw new IllegalArgumentException("precision must be between 4 and 16");
+        registers = new byte[1 << precision];
+    }
+
+    public int getPrecision() {
+        return Integer.numberOfTrailingZeros(registers.length);
+    }
+
+    public void add(long value) {
+        long hash = mix(value);
+        int precision = getPrecision();
+        int index = (int) (hash >>> (64 - precision));
+        // position of the first 1 bit in the remaining bits; the sentinel bit caps it at 64 - precision + 1
+        byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1);
+        if (rank > registers[index]) registers[index] = rank;
+    }
+
+    /**
+     * Folds {@code other} into this sketch, which then estimates the distinct count of the union.
+     */
+    public HyperLogLog merge(HyperLogLog other) {
+        if (other.registers.length != registers.length)
+            throw new IllegalArgumentException("cannot merge sketches of different precision");
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) registers[i] = other.registers[i];
+        }
+        return this;
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1d / (1L << register);
+            if (register == 0) zeros++;
+        }
+        double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+        // the raw estimate is biased for small cardinalities, where counting empty registers is more accurate;
+        // with a 64-bit hash no large range correction is needed
+        if (estimate <= 2.5 * m && zeros > 0) estimate = m * Math.log((double) m / zeros);
+        return Math.round(estimate);
+    }
+
+    // murmur3 64-bit finalizer, so consecutive player IDs spread over all registers
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb3fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
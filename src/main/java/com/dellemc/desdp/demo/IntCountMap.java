@@ -0,0 +1,88 @@
+package com.dellemc.desdp.demo;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity open-addressing map from non-negative int keys to int counts, without boxing. Used to accumulate
+ * partial counts between flushes; the owner flushes before it is full.
+ */
+public class IntCountMap {
+    private static final int EMPTY = -1;
+
+    private final int maxSize;
+    private final int[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size;
+
+    public IntCountMap(int maxSize) {
+        if (maxSize <= 0) throw new IllegalArgumentException("max size must be greater than 0");
+        this.maxSize = maxSize;
+        // keep the load factor at or below 0.5
+        int capacity = Integer.highestOneBit(Math.max(2, maxSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size >= maxSize;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds {@code delta} to the count of {@code key}. The map must not be full if the key is new.
+     */
+    public void add(int key, int delta) {
+        if (key < 0) throw new IllegalArgumentException("keys must not be negative");
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == EMPTY) {
+            if (isFull()) throw new IllegalStateException("map is full");
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] += delta;
+    }
+
+    /**
+     * Number of slots, for iterating with {@link #isUsed(int)}, {@link #keyAt(int)} and {@link #valueAt(int)}.
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean isUsed(int slot) {
+        return keys[slot] != EMPTY;
+    }
+
+    public int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    public void clear() {
+        if (size == 0) return;
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
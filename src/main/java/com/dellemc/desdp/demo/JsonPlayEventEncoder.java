@@ -0,0 +1,82 @@
+package com.dellemc.desdp.demo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes play events as the same JSON produced by {@link SongPlayGenerator#generatePlayMessage(String)}, straight into
+ * a byte buffer. Everything except the player ID is pre-encoded per song when the encoder is created, so encoding an
+ * event is a couple of bulk copies plus the player ID and timestamp digits, and allocates nothing.
+ */
+public class JsonPlayEventEncoder implements PlayEventEncoder {
+    private static final byte[] PREFIX = "{\"playerId\": \"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] END = "}".getBytes(StandardCharsets.UTF_8);
+
+    private final byte[][] suffixes; // per song ID: message between the player ID and the timestamp
+    private final int maxEncodedLength;
+
+    public JsonPlayEventEncoder(Catalog catalog) {
+        suffixes = new byte[catalog.getSongCount()][];
+        int maxSuffix = 0;
+        for (int i = 0; i < suffixes.length; i++) {
+            suffixes[i] = ("\"," +
+                    "\"song\": \"" + escape(catalog.getSong(i)) + "\"," +
+                    "\"artist\": \"" + escape(catalog.getArtist(catalog.getArtistId(i))) + "\"," +
+                    "\"timestamp\": ").getBytes(StandardCharsets.UTF_8);
+            maxSuffix = Math.max(maxSuffix, suffixes[i].length);
+        }
+        // 10 and 19 are the digits in Integer.MAX_VALUE and Long.MAX_VALUE
+        maxEncodedLength = PREFIX.length + 10 + maxSuffix + 19 + END.length;
+    }
+
+    @Override
+    public int getSongCount() {
+        return suffixes.length;
+    }
+
+    public int getMaxEncodedLength() {
+        return maxEncodedLength;
+    }
+
+    @Override
+    public int encodedLength(int playerId, int songId, long timestamp) {
+        return PREFIX.length + digits(playerId) + suffixes[songId].length + digits(timestamp) + END.length;
+    }
+
+    @Override
+    public void encode(int playerId, int songId, long timestamp, ByteBuffer target) {
+        target.put(PREFIX);
+        putDigits(playerId, target);
+        target.put(suffixes[songId]);
+        putDigits(timestamp, target);
+        target.put(END);
+    }
+
+    static void putDigits(long value, ByteBuffer target) {
+        int end = target.position() + digits(value);
+        for (int i = end - 1; i >= target.position(); i--) {
+            target.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        target.position(end);
+    }
+
+    static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') escaped.append('\\').append(c);
+            else if (c < 0x20) escaped.append(String.format("\\u%04x", (int) c));
+            else escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package com.dellemc.desdp.demo;
+
+import java.util.Random;
+
+/**
+ * Draws keys (song IDs, player indexes) in {@code [0, size)} from a popularity distribution. Key 0 is the most popular.
+ * Every sampler draws in O(1); skewed distributions are precomputed into an alias table when created.
+ */
+public interface KeySampler {
+
+    int next(Random random);
+
+    /**
+     * Creates a sampler from a distribution spec:
+     * <ul>
+     * <li>{@code uniform}</li>
+     * <li>{@code zipf:<exponent>} - the key of rank k is drawn with probability proportional to 1/k^exponent</li>
+     * <li>{@code hotset:<hot-fraction>:<hot-percent>} - e.g. hotset:0.1:90 sends 90% of draws to the first 10% of keys</li>
+     * </ul>
+     */
+    static KeySampler create(String spec, int size) {
+        if (size <= 0) throw new IllegalArgumentException("key space must not be empty");
+        String[] parts = spec.toLowerCase().split(":");
+        switch (parts[0]) {
+            case "uniform":
+                if (parts.length != 1) break;
+                return new UniformSampler(size);
+            case "zipf":
+                if (parts.length != 2) break;
+                double exponent = Double.parseDouble(parts[1]);
+                if (exponent <= 0) throw new IllegalArgumentException("zipf exponent must be greater than 0");
+                double[] weights = new double[size];
+                for (int i = 0; i < size; i++) {
+                    weights[i] = 1 / Math.pow(i + 1, exponent);
+                }
+                return new AliasSampler(weights);
+            case "hotset":
+                if (parts.length != 3) break;
+                double hotFraction = Double.parseDouble(parts[1]);
+                double hotPercent = Double.parseDouble(parts[2]);
+                if (hotFraction <= 0 || hotFraction >= 1)
+                    throw new IllegalArgumentException("hot set fraction must be between 0 and 1");
+                if (hotPercent < 0 || hotPercent > 100)
+                    throw new IllegalArgumentException("hot set percent must be between 0 and 100");
+                if (size == 1) return new UniformSampler(size);
+                int hotSize = Math.max(1, Math.min(size - 1, (int) Math.round(size * hotFraction)));
+                return new HotSetSampler(size, hotSize, hotPercent / 100);
+        }
+        throw new IllegalArgumentException("invalid distribution " + spec + ", expected uniform, zipf:<exponent> or hotset:<hot-fraction>:<hot-percent>");
+    }
+
+    class UniformSampler implements KeySampler {
+        private int size;
+
+        UniformSampler(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int next(Random random) {
+            return random.nextInt(size);
+        }
+    }
+
+    /**
+     * A two-level uniform draw: first hot or cold set, then a key within it. Needs no table.
+     */
+    class HotSetSampler implements KeySampler {
+        private int size, hotSize;
+        private double hotProbability;
+
+        HotSetSampler(int size, int hotSize, double hotProbability) {
+            this.size = size;
+            this.hotSize = hotSize;
+            this.hotProbability = hotProbability;
+        }
+
+        @Override
+        public int next(Random random) {
+            if (random.nextDouble() < hotProbability) return random.nextInt(hotSize);
+            return hotSize + random.nextInt(size - hotSize);
+        }
+    }
+
+    /**
+     * Walker's alias method (Vose's construction): one uniform slot pick and one biased coin flip per draw, for any
+     * discrete distribution. Takes 8 bytes per key.
+     */
+    class AliasSampler implements KeySampler {
+        private final float[] probability;
+        private final int[] alias;
+
+        AliasSampler(double[] weights) {
+            int n = weights.length;
+            probability = new float[n];
+            alias = new int[n];
+
+            double total = 0;
+            for (double weight : weights) {
+                total += weight;
+            }
+
+            // scale so the average weight is 1, then pair each under-full slot with an over-full one
+            double[] scaled = new double[n];
+            int[] small = new int[n], large = new int[n]; // stacks of slot indexes
+            int smallCount = 0, largeCount = 0;
+            for (int i = 0; i < n; i++) {
+                scaled[i] = weights[i] * n / total;
+                if (scaled[i] < 1) small[smallCount++] = i;
+                else large[largeCount++] = i;
+            }
+            while (smallCount > 0 && largeCount > 0) {
+                int less = small[--smallCount], more = large[--largeCount];
+                probability[less] = (float) scaled[less];
+                alias[less] = more;
+                scaled[more] = scaled[more] + scaled[less] - 1;
+                if (scaled[more] < 1) small[smallCount++] = more;
+                else large[largeCount++] = more;
+            }
+            // whatever is left is full up to rounding error
+            while (largeCount > 0) probability[large[--largeCount]] = 1;
+            while (smallCount > 0) probability[small[--smallCount]] = 1;
+        }
+
+        @Override
+        public int next(Random random) {
+            int slot = random.nextInt(probability.length);
+            return random.nextFloat() < probability[slot] ? slot : alias[slot];
+        }
+    }
+}
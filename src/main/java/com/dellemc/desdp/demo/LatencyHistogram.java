@@ -0,0 +1,87 @@
+package com.dellemc.desdp.demo;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.flink.metrics.HistogramStatistics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Flink histogram metric backed by an HdrHistogram {@link Recorder}, so recording is a few nanoseconds and safe from
+ * any thread. Statistics cover the values recorded since the previous snapshot, which is taken at most once per
+ * {@code SNAPSHOT_MILLIS} however many reporters read it. Individual values are not kept, so
+ * {@link HistogramStatistics#getValues()} is empty.
+ */
+public class LatencyHistogram implements org.apache.flink.metrics.Histogram {
+    private static final long SNAPSHOT_MILLIS = 1000;
+
+    private final Recorder recorder = new Recorder(3);
+    private final LongAdder count = new LongAdder();
+    private Histogram snapshot;
+    private long snapshotTime;
+
+    @Override
+    public void update(long value) {
+        // clocks of different hosts may disagree slightly; count those as 0 rather than failing
+        recorder.recordValue(Math.max(0, value));
+        count.increment();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public synchronized HistogramStatistics getStatistics() {
+        long now = System.currentTimeMillis();
+        if (snapshot == null || now - snapshotTime >= SNAPSHOT_MILLIS) {
+            snapshot = recorder.getIntervalHistogram();
+            snapshotTime = now;
+        }
+        return new Statistics(snapshot);
+    }
+
+    static class Statistics extends HistogramStatistics {
+        private final Histogram histogram;
+
+        Statistics(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public double getQuantile(double quantile) {
+            return histogram.getValueAtPercentile(quantile * 100);
+        }
+
+        @Override
+        public long[] getValues() {
+            return new long[0];
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, histogram.getTotalCount());
+        }
+
+        @Override
+        public double getMean() {
+            return histogram.getMean();
+        }
+
+        @Override
+        public double getStdDev() {
+            return histogram.getStdDeviation();
+        }
+
+        @Override
+        public long getMax() {
+            return histogram.getMaxValue();
+        }
+
+        @Override
+        public long getMin() {
+            return histogram.getMinValue();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.dellemc.desdp.demo;
+
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.runtime.state.StateInitializationContext;
+import org.apache.flink.runtime.state.StateSnapshotContext;
+import org.apache.flink.streaming.api.operators.AbstractStreamOperator;
+import org.apache.flink.streaming.api.operators.ChainingStrategy;
+import org.apache.flink.streaming.api.operators.OneInputStreamOperator;
+import org.apache.flink.streaming.runtime.streamrecord.StreamRecord;
+import org.apache.flink.streaming.runtime.tasks.ProcessingTimeCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Map-side combine for the running artist counts: each subtask sums plays per artist locally and emits
+ * (artistId, partial count) pairs, so the keyBy shuffles one record per artist per flush instead of one per event, and
+ * a hot artist no longer sends every play to a single downstream subtask.
+ * <p>
+ * Partial sums are flushed after {@code maxEvents} events, when {@code maxKeys} distinct artists are pending, and at
+ * the latest {@code maxMillis} after the previous flush, by a processing-time timer, so the counts downstream catch up
+ * within {@code maxMillis} also when plays stop arriving. A flush carries the timestamp of the newest play it includes.
+ * Pending sums are kept in operator state on checkpoints, and flushed when the input ends.
+ * <p>
+ * An operator rather than a function, since only operators can register timers without keying their input, and keying
+ * it would undo the combine. Add it with {@code transform("pre-aggregate", LocalArtistCombiner.TYPE, combiner)}.
+ */
+public class LocalArtistCombiner extends AbstractStreamOperator<Tuple2<Integer, Integer>>
+        implements OneInputStreamOperator<PlayEvent, Tuple2<Integer, Integer>>, ProcessingTimeCallback {
+
+    static final TypeInformation<Tuple2<Integer, Integer>> TYPE = Types.TUPLE(Types.INT, Types.INT);
+
+    private int maxEvents;
+    private long maxMillis;
+    private int maxKeys;
+
+    private transient IntCountMap pending;
+    private transient int pendingEvents;
+    private transient long lastFlush;
+    private transient boolean timerRegistered;
+    private transient ListState<Tuple2<Integer, Integer>> checkpointedCounts;
+    // emitted for every pending artist; each is serialized by the keyBy before the next one is set
+    private transient Tuple2<Integer, Integer> result;
+    private transient StreamRecord<Tuple2<Integer, Integer>> record;
+
+    public LocalArtistCombiner(int maxEvents, long maxMillis, int maxKeys) {
+        this.maxEvents = maxEvents;
+        this.maxMillis = maxMillis;
+        this.maxKeys = maxKeys;
+        chainingStrategy = ChainingStrategy.ALWAYS;
+    }
+
+    @Override
+    public void open() throws Exception {
+        super.open();
+        lastFlush = getProcessingTimeService().getCurrentProcessingTime();
+        result = new Tuple2<>();
+        record = new StreamRecord<>(result);
+        if (!pending.isEmpty()) registerTimer();
+    }
+
+    @Override
+    public void processElement(StreamRecord<PlayEvent> element) {
+        if (pending.isFull()) flush();
+        if (element.hasTimestamp()) record.setTimestamp(element.getTimestamp());
+        else record.eraseTimestamp();
+        if (pending.isEmpty() && !timerRegistered) registerTimer();
+        pending.add(element.getValue().artistId, 1);
+        pendingEvents++;
+
+        if (pendingEvents >= maxEvents) flush();
+    }
+
+    /**
+     * Flushes if {@code maxMillis} have passed since the previous flush, otherwise waits until they have. Timers run
+     * under the checkpoint lock, between elements.
+     */
+    @Override
+    public void onProcessingTime(long time) {
+        timerRegistered = false;
+        if (pending.isEmpty()) return;
+        if (time >= lastFlush + maxMillis) flush();
+        else registerTimer();
+    }
+
+    private void registerTimer() {
+        getProcessingTimeService().registerTimer(lastFlush + maxMillis, this);
+        timerRegistered = true;
+    }
+
+    private void flush() {
+        for (int slot = 0; slot < pending.capacity(); slot++) {
+            if (pending.isUsed(slot)) {
+                result.f0 = pending.keyAt(slot);
+                result.f1 = pending.valueAt(slot);
+                output.collect(record);
+            }
+        }
+        pending.clear();
+        pendingEvents = 0;
+        lastFlush = getProcessingTimeService().getCurrentProcessingTime();
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (!pending.isEmpty()) flush();
+        super.close();
+    }
+
+    @Override
+    public void snapshotState(StateSnapshotContext context) throws Exception {
+        super.snapshotState(context);
+        checkpointedCounts.clear();
+        for (int slot = 0; slot < pending.capacity(); slot++) {
+            if (pending.isUsed(slot)) checkpointedCounts.add(new Tuple2<>(pending.keyAt(slot), pending.valueAt(slot)));
+        }
+    }
+
+    @Override
+    public void initializeState(StateInitializationContext context) throws Exception {
+        super.initializeState(context);
+        checkpointedCounts = context.getOperatorStateStore().getListState(
+                new ListStateDescriptor<>("pending-artist-counts", TYPE));
+
+        // partial sums are additive, so however the list is redistributed on restore, each entry is just re-added
+        List<Tuple2<Integer, Integer>> restored = new ArrayList<>();
+        if (context.isRestored()) {
+            for (Tuple2<Integer, Integer> count : checkpointedCounts.get()) {
+                restored.add(count);
+            }
+        }
+        // after scaling in, a subtask may get more pending artists than maxKeys; make room for all of them
+        pending = new IntCountMap(Math.max(maxKeys, restored.size()));
+        for (Tuple2<Integer, Integer> count : restored) {
+            pending.add(count.f0, count.f1);
+        }
+    }
+}
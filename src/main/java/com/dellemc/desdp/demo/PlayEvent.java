@@ -0,0 +1,52 @@
+package com.dellemc.desdp.demo;
+
+import org.apache.flink.api.common.typeinfo.TypeInfo;
+
+import java.io.Serializable;
+
+/**
+ * A single song play as read from the stream, with the song and artist as {@link Catalog} IDs. Records that can't be
+ * decoded are still delivered as a PlayEvent, with only {@link #malformed} set, so the reader can route them to a side
+ * output instead of failing the job. Flink serializes it with {@link PlayEventSerializer}.
+ */
+@TypeInfo(PlayEventTypeInfo.Factory.class)
+public class PlayEvent implements Serializable {
+    public int playerId;
+    public int songId;
+    public int artistId;
+    // creation time (epoch millis) if the event carries one, otherwise 0
+    public long timestamp;
+    // the raw record text if it could not be decoded, otherwise null
+    public String malformed;
+
+    public PlayEvent() {
+    }
+
+    public PlayEvent(int playerId, int songId, int artistId, long timestamp) {
+        this.playerId = playerId;
+        this.songId = songId;
+        this.artistId = artistId;
+        this.timestamp = timestamp;
+    }
+
+    static PlayEvent malformed(String raw) {
+        PlayEvent event = new PlayEvent();
+        event.malformed = raw;
+        return event;
+    }
+
+    public boolean isValid() {
+        return malformed == null;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "playerId=" + playerId +
+                ", songId=" + songId +
+                ", artistId=" + artistId +
+                ", timestamp=" + timestamp +
+                (malformed != null ? ", malformed='" + malformed + '\'' : "") +
+                '}';
+    }
+}
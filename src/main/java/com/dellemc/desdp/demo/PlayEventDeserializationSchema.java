@@ -0,0 +1,78 @@
+package com.dellemc.desdp.demo;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.flink.api.common.serialization.AbstractDeserializationSchema;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes play events in either {@link EventFormat}, detected per event from the binary header. JSON is read straight
+ * from the event bytes with a streaming parser, picking out only playerId, song and timestamp (0 if absent), and the
+ * song title is mapped to its catalog ID. Undecodable records, and songs missing from the catalog, come back as
+ * {@link PlayEvent#malformed(String)} rather than as an exception, which would fail the source.
+ */
+public class PlayEventDeserializationSchema extends AbstractDeserializationSchema<PlayEvent> {
+    // thread-safe and reusable; deliberately static so it is not part of the serialized schema
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private Catalog catalog;
+
+    public PlayEventDeserializationSchema(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public PlayEvent deserialize(byte[] message) {
+        try {
+            PlayEvent event = message.length > 0 && message[0] == BinaryPlayEventEncoder.MAGIC
+                    ? parseBinary(message) : parse(message);
+            if (event != null) return event;
+        } catch (IOException | RuntimeException e) {
+            // fall through to malformed
+        }
+        return PlayEvent.malformed(new String(message, StandardCharsets.UTF_8));
+    }
+
+    // returns null for an unknown format version or song ID
+    PlayEvent parseBinary(byte[] message) {
+        ByteBuffer buffer = ByteBuffer.wrap(message);
+        buffer.get(); // magic
+        if (buffer.get() != BinaryPlayEventEncoder.VERSION) return null;
+
+        int songId = BinaryPlayEventEncoder.getVarint(buffer);
+        if (songId < 0 || songId >= catalog.getSongCount()) return null;
+        int playerId = buffer.getInt();
+        long timestamp = buffer.getLong();
+        return new PlayEvent(playerId, songId, catalog.getArtistId(songId), timestamp);
+    }
+
+    // returns null if the record is well-formed JSON but is missing a field or has an unknown song
+    PlayEvent parse(byte[] message) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+
+            String playerId = null;
+            int songId = -1;
+            long timestamp = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value.isStructStart()) {
+                    parser.skipChildren();
+                } else if ("playerId".equals(field)) {
+                    playerId = parser.getValueAsString();
+                } else if ("song".equals(field)) {
+                    songId = catalog.getSongId(parser.getValueAsString());
+                } else if ("timestamp".equals(field)) {
+                    timestamp = parser.getValueAsLong();
+                }
+            }
+            if (playerId == null || songId < 0) return null;
+            return new PlayEvent(Integer.parseInt(playerId), songId, catalog.getArtistId(songId), timestamp);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.dellemc.desdp.demo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes play events for the generator in one of the {@link EventFormat}s. Songs are identified by their
+ * {@link Catalog} ID.
+ */
+public interface PlayEventEncoder {
+
+    int getSongCount();
+
+    /**
+     * @return the exact number of bytes {@link #encode(int, int, long, ByteBuffer)} will write for this event
+     */
+    int encodedLength(int playerId, int songId, long timestamp);
+
+    /**
+     * Writes the event at the buffer's position and advances it. {@code playerId} and {@code timestamp} (epoch millis)
+     * must not be negative.
+     */
+    void encode(int playerId, int songId, long timestamp, ByteBuffer target);
+}
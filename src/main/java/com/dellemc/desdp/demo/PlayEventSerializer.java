@@ -0,0 +1,127 @@
+package com.dellemc.desdp.demo;
+
+import org.apache.flink.api.common.typeutils.SimpleTypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.TypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.base.TypeSerializerSingleton;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputView;
+import org.apache.flink.types.StringValue;
+
+import java.io.IOException;
+
+/**
+ * Serializer of {@link PlayEvent}s between operators and in state, in place of Flink's POJO serializer, which writes a
+ * null marker per field and the malformed text field of every event. A valid event is a zero flag byte, the player,
+ * song and artist IDs as variable-length ints (one or two bytes each for the default catalog and player count) and
+ * the 8-byte timestamp; a malformed one is the flag byte 1 and its raw text.
+ */
+public final class PlayEventSerializer extends TypeSerializerSingleton<PlayEvent> {
+    public static final PlayEventSerializer INSTANCE = new PlayEventSerializer();
+
+    private static final byte VALID = 0;
+    private static final byte MALFORMED = 1;
+
+    @Override
+    public boolean isImmutableType() {
+        return false;
+    }
+
+    @Override
+    public PlayEvent createInstance() {
+        return new PlayEvent();
+    }
+
+    @Override
+    public PlayEvent copy(PlayEvent from) {
+        return copy(from, new PlayEvent());
+    }
+
+    @Override
+    public PlayEvent copy(PlayEvent from, PlayEvent reuse) {
+        reuse.playerId = from.playerId;
+        reuse.songId = from.songId;
+        reuse.artistId = from.artistId;
+        reuse.timestamp = from.timestamp;
+        reuse.malformed = from.malformed;
+        return reuse;
+    }
+
+    @Override
+    public int getLength() {
+        return -1;
+    }
+
+    @Override
+    public void serialize(PlayEvent event, DataOutputView target) throws IOException {
+        if (event.malformed != null) {
+            target.writeByte(MALFORMED);
+            StringValue.writeString(event.malformed, target);
+            return;
+        }
+        target.writeByte(VALID);
+        writeVarInt(event.playerId, target);
+        writeVarInt(event.songId, target);
+        writeVarInt(event.artistId, target);
+        target.writeLong(event.timestamp);
+    }
+
+    @Override
+    public PlayEvent deserialize(DataInputView source) throws IOException {
+        return deserialize(new PlayEvent(), source);
+    }
+
+    @Override
+    public PlayEvent deserialize(PlayEvent reuse, DataInputView source) throws IOException {
+        if (source.readByte() == MALFORMED) {
+            reuse.playerId = reuse.songId = reuse.artistId = 0;
+            reuse.timestamp = 0;
+            reuse.malformed = StringValue.readString(source);
+            return reuse;
+        }
+        reuse.playerId = readVarInt(source);
+        reuse.songId = readVarInt(source);
+        reuse.artistId = readVarInt(source);
+        reuse.timestamp = source.readLong();
+        reuse.malformed = null;
+        return reuse;
+    }
+
+    @Override
+    public void copy(DataInputView source, DataOutputView target) throws IOException {
+        serialize(deserialize(source), target);
+    }
+
+    @Override
+    public boolean canEqual(Object obj) {
+        return obj instanceof PlayEventSerializer;
+    }
+
+    // 7 bits per byte, low bits first; IDs are never negative, so no zigzag encoding
+    static void writeVarInt(int value, DataOutputView target) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            target.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target.writeByte(value);
+    }
+
+    static int readVarInt(DataInputView source) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = source.readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    @Override
+    public TypeSerializerSnapshot<PlayEvent> snapshotConfiguration() {
+        return new PlayEventSerializerSnapshot();
+    }
+
+    public static final class PlayEventSerializerSnapshot extends SimpleTypeSerializerSnapshot<PlayEvent> {
+        public PlayEventSerializerSnapshot() {
+            super(PlayEventSerializer.class);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.dellemc.desdp.demo;
+
+import org.apache.flink.api.common.ExecutionConfig;
+import org.apache.flink.api.common.typeinfo.TypeInfoFactory;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Type information of {@link PlayEvent}, registered on the class with {@code @TypeInfo} so Flink always uses
+ * {@link PlayEventSerializer} for it. Play events are not a composite type here, so they can't be keyed or referenced
+ * by field name; the reader keys them with key selectors, and converts them to tuples for the Table API.
+ */
+public class PlayEventTypeInfo extends TypeInformation<PlayEvent> {
+    public static final PlayEventTypeInfo INSTANCE = new PlayEventTypeInfo();
+
+    @Override
+    public boolean isBasicType() {
+        return false;
+    }
+
+    @Override
+    public boolean isTupleType() {
+        return false;
+    }
+
+    @Override
+    public int getArity() {
+        return 1;
+    }
+
+    @Override
+    public int getTotalFields() {
+        return 1;
+    }
+
+    @Override
+    public Class<PlayEvent> getTypeClass() {
+        return PlayEvent.class;
+    }
+
+    @Override
+    public boolean isKeyType() {
+        return false;
+    }
+
+    @Override
+    public TypeSerializer<PlayEvent> createSerializer(ExecutionConfig config) {
+        return PlayEventSerializer.INSTANCE;
+    }
+
+    @Override
+    public String toString() {
+        return "PlayEvent";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof PlayEventTypeInfo;
+    }
+
+    @Override
+    public int hashCode() {
+        return PlayEventTypeInfo.class.hashCode();
+    }
+
+    @Override
+    public boolean canEqual(Object obj) {
+        return obj instanceof PlayEventTypeInfo;
+    }
+
+    public static class Factory extends TypeInfoFactory<PlayEvent> {
+        @Override
+        public TypeInformation<PlayEvent> createTypeInfo(Type t, Map<String, TypeInformation<?>> genericParameters) {
+            return INSTANCE;
+        }
+    }
+}
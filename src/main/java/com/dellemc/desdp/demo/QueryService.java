@@ -0,0 +1,257 @@
+package com.dellemc.desdp.demo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.runtime.state.FunctionSnapshotContext;
+import org.apache.flink.streaming.api.checkpoint.CheckpointedFunction;
+import org.apache.flink.streaming.api.functions.sink.RichSinkFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves the reader's current results as JSON over HTTP, straight from the job instead of through Elasticsearch:
+ * <ul>
+ * <li>{@code /artists}: the running play count of every artist, by name</li>
+ * <li>{@code /artists/<name>}: the running play count of one artist</li>
+ * <li>{@code /top}: the current top N, as the documents the Elasticsearch sinks write, or the top N running counts</li>
+ * </ul>
+ * The results are written by one of the sink functions below, run with parallelism 1 so the one service sees all of
+ * them, and read by the HTTP threads without locking: running counts live in a {@link ConcurrentHashMap}, and the
+ * ranking is an immutable list that the sink replaces with each complete ranking, so a request never sees some ranks
+ * of a new ranking and some of an old one. Uses the JDK's built-in HTTP server, like
+ * {@link MetricsHttpServer}.
+ * <p>
+ * The running counts are also kept in the sink's checkpointed state, so after a failover the service starts with the
+ * counts of the restored checkpoint rather than empty. A ranking is not checkpointed; {@code /top} is empty until the
+ * next one, which comes with the next window.
+ */
+public class QueryService implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(QueryService.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    static {
+        // the JDK server writes the headers and the body of a response separately, so without TCP_NODELAY each
+        // response on a kept-alive connection waits ~40 ms for the client's delayed ACK; read when the first server
+        // in the JVM is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Catalog catalog;
+    private final int topN;
+    private final HttpServer server;
+
+    private final Map<Integer, Integer> counts = new ConcurrentHashMap<>(); // running count by artist ID
+    private volatile List<Map<String, Object>> ranking = Collections.emptyList(); // by rank - 1
+
+    public QueryService(int port, Catalog catalog, int topN) throws IOException {
+        this.catalog = catalog;
+        this.topN = topN;
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/artists", this::handleArtists);
+        server.createContext("/top", exchange -> respond(exchange, 200, getTop()));
+        server.start();
+        log.info("serving results at http://localhost:{}/top and /artists", getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    void updateCount(int artistId, int count) {
+        counts.put(artistId, count);
+    }
+
+    /**
+     * Replaces the ranking with {@code documents}, one per rank from the first.
+     */
+    void updateRanking(List<Map<String, Object>> documents) {
+        ranking = Collections.unmodifiableList(documents);
+    }
+
+    Map<String, Integer> getCounts() {
+        Map<String, Integer> byName = new LinkedHashMap<>();
+        counts.forEach((artistId, count) -> byName.put(catalog.getArtist(artistId), count));
+        return byName;
+    }
+
+    List<Map<String, Object>> getTop() {
+        List<Map<String, Object>> current = ranking;
+        if (!current.isEmpty()) return current;
+        List<Map<String, Object>> top = new ArrayList<>();
+        // running counts are not ranked by the job, so rank them on request; there are few artists
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed())
+                .limit(topN)
+                .forEach(entry -> {
+                    Map<String, Object> document = new LinkedHashMap<>();
+                    document.put("rank", top.size() + 1);
+                    document.put("artist", catalog.getArtist(entry.getKey()));
+                    document.put("count", entry.getValue());
+                    top.add(document);
+                });
+        return top;
+    }
+
+    private void handleArtists(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getRawPath();
+        if (path.equals("/artists") || path.equals("/artists/")) {
+            respond(exchange, 200, getCounts());
+            return;
+        }
+        String artist = URLDecoder.decode(path.substring("/artists/".length()), StandardCharsets.UTF_8.name());
+        Integer count = getCounts().get(artist);
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("artist", artist);
+        if (count == null) {
+            document.put("error", "no plays counted for this artist");
+            respond(exchange, 404, document);
+        } else {
+            document.put("count", count);
+            respond(exchange, 200, document);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, Object result) throws IOException {
+        byte[] body = JSON.writeValueAsBytes(result);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    /**
+     * Starts the service when the sink opens and stops it when the sink closes, so it lives as long as the job.
+     */
+    abstract static class QuerySink<T> extends RichSinkFunction<T> {
+        private final int port;
+        final Catalog catalog;
+        private final int topN;
+        transient QueryService service;
+
+        QuerySink(int port, Catalog catalog, int topN) {
+            this.port = port;
+            this.catalog = catalog;
+            this.topN = topN;
+        }
+
+        @Override
+        public void open(Configuration parameters) throws IOException {
+            service = new QueryService(port, catalog, topN);
+        }
+
+        @Override
+        public void close() {
+            if (service != null) service.close();
+        }
+    }
+
+    public static class RunningCountSink extends QuerySink<Tuple2<Integer, Integer>> implements CheckpointedFunction {
+        private transient ListState<Tuple2<Integer, Integer>> checkpointedCounts;
+        private transient List<Tuple2<Integer, Integer>> restoredCounts;
+
+        public RunningCountSink(int port, Catalog catalog, int topN) {
+            super(port, catalog, topN);
+        }
+
+        @Override
+        public void initializeState(FunctionInitializationContext context) throws Exception {
+            checkpointedCounts = context.getOperatorStateStore().getListState(
+                    new ListStateDescriptor<>("counts", Types.TUPLE(Types.INT, Types.INT)));
+            restoredCounts = new ArrayList<>();
+            for (Tuple2<Integer, Integer> count : checkpointedCounts.get()) {
+                restoredCounts.add(count);
+            }
+        }
+
+        @Override
+        public void open(Configuration parameters) throws IOException {
+            super.open(parameters);
+            // state is restored before the sink opens, so the service only exists now
+            for (Tuple2<Integer, Integer> count : restoredCounts) {
+                service.updateCount(count.f0, count.f1);
+            }
+            restoredCounts = null;
+        }
+
+        @Override
+        public void invoke(Tuple2<Integer, Integer> count, Context context) {
+            service.updateCount(count.f0, count.f1);
+        }
+
+        @Override
+        public void snapshotState(FunctionSnapshotContext context) throws Exception {
+            checkpointedCounts.clear();
+            for (Map.Entry<Integer, Integer> count : service.counts.entrySet()) {
+                checkpointedCounts.add(Tuple2.of(count.getKey(), count.getValue()));
+            }
+        }
+    }
+
+    public static class TopArtistSink extends QuerySink<ArtistWindowCount[]> {
+        public TopArtistSink(int port, Catalog catalog, int topN) {
+            super(port, catalog, topN);
+        }
+
+        @Override
+        public void invoke(ArtistWindowCount[] ranking, Context context) {
+            List<Map<String, Object>> documents = new ArrayList<>(ranking.length);
+            for (ArtistWindowCount count : ranking) {
+                Map<String, Object> document = new LinkedHashMap<>();
+                document.put("rank", count.rank);
+                document.put("artist", catalog.getArtist(count.artistId));
+                document.put("count", count.count);
+                document.put("listeners", count.listeners);
+                document.put("windowEnd", count.windowEnd);
+                documents.add(document);
+            }
+            service.updateRanking(documents);
+        }
+    }
+
+    public static class TopSongSink extends QuerySink<SongWindowCount[]> {
+        public TopSongSink(int port, Catalog catalog, int topN) {
+            super(port, catalog, topN);
+        }
+
+        @Override
+        public void invoke(SongWindowCount[] ranking, Context context) {
+            List<Map<String, Object>> documents = new ArrayList<>(ranking.length);
+            for (SongWindowCount count : ranking) {
+                Map<String, Object> document = new LinkedHashMap<>();
+                document.put("rank", count.rank);
+                document.put("song", catalog.getSong(count.songId));
+                document.put("artist", catalog.getArtist(catalog.getArtistId(count.songId)));
+                document.put("count", count.count);
+                document.put("error", count.error);
+                document.put("windowEnd", count.windowEnd);
+                documents.add(document);
+            }
+            service.updateRanking(documents);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.dellemc.desdp.demo;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token bucket rate limiter with nanosecond resolution.
+ * <p>
+ * Permits are scheduled on an absolute timeline (the time at which the next permit becomes free), so time spent by the
+ * caller between acquisitions and oversleeping in {@link LockSupport#parkNanos(long)} is not lost: a caller that falls
+ * behind gets the missed permits immediately until it has caught up. The amount it may catch up (or save up while idle)
+ * is capped by the burst size, which is the bucket capacity in permits.
+ * <p>
+ * Instances are not thread-safe; each producer thread uses its own limiter with its share of the total rate.
+ */
+public class RateLimiter {
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final long origin = System.nanoTime();
+    private double rate; // permits per second
+    private double burst; // permits
+    private double intervalNanos;
+    // time (relative to origin) at which the next permit is free; a double so fractional intervals do not drift
+    private double nextFree;
+
+    public RateLimiter(double rate, double burst) {
+        setRate(rate, burst);
+        nextFree = now();
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public double getBurst() {
+        return burst;
+    }
+
+    /**
+     * Changes the rate and burst size. A wait that is already scheduled is rescaled to the new rate, so lowering the
+     * rate from a very high value (or raising it from a very low one) takes effect immediately.
+     */
+    public void setRate(double rate, double burst) {
+        if (!(rate > 0) || Double.isInfinite(rate)) throw new IllegalArgumentException("rate must be greater than 0");
+        if (!(burst >= 1)) throw new IllegalArgumentException("burst must be at least 1 permit");
+        double newIntervalNanos = NANOS_PER_SECOND / rate;
+        if (intervalNanos > 0) {
+            double now = now();
+            if (nextFree > now) nextFree = now + (nextFree - now) * newIntervalNanos / intervalNanos;
+        }
+        this.rate = rate;
+        this.burst = burst;
+        this.intervalNanos = newIntervalNanos;
+    }
+
+    /**
+     * Takes one permit, parking until it is free but for no longer than {@code maxWaitNanos}.
+     *
+     * @return true if the permit was taken, false if it is not free within {@code maxWaitNanos} (nothing is consumed)
+     */
+    public boolean acquire(long maxWaitNanos) {
+        double now = now();
+
+        // cap the credit saved up while idle (or while falling behind) at the burst size
+        double earliest = now - burst * intervalNanos;
+        if (nextFree < earliest) nextFree = earliest;
+
+        double waitNanos = nextFree - now;
+        if (waitNanos > maxWaitNanos) {
+            LockSupport.parkNanos(maxWaitNanos);
+            return false;
+        }
+        nextFree += intervalNanos;
+
+        // parkNanos may return early (or spuriously), so keep parking until the permit is due
+        while (waitNanos > 0) {
+            LockSupport.parkNanos((long) Math.ceil(waitNanos));
+            waitNanos = nextFree - intervalNanos - now();
+        }
+        return true;
+    }
+
+    private double now() {
+        return System.nanoTime() - origin;
+    }
+}
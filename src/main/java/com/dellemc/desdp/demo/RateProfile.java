@@ -0,0 +1,128 @@
+package com.dellemc.desdp.demo;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A target throughput over time, between the configured min and max xput. The generator samples it periodically and
+ * hands the result to its {@link RateLimiter}s.
+ */
+public interface RateProfile {
+
+    /**
+     * @return the target throughput (events per second) {@code elapsedNanos} after the generator started
+     */
+    double rateAt(long elapsedNanos);
+
+    static RateProfile create(SongPlayGenerator.Config config) {
+        double min = config.getMinXput(), max = config.getMaxXput();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(config.getXputInterval());
+        switch (config.getRateProfile()) {
+            case RANDOM:
+                return new RandomRateProfile(min, max, intervalNanos, new Random());
+            case RAMP:
+                return new RampRateProfile(min, max, intervalNanos);
+            case STEP:
+                return new StepRateProfile(min, max, intervalNanos, config.getXputSteps());
+            case SINE:
+                return new SineRateProfile(min, max, intervalNanos);
+            default:
+                throw new IllegalArgumentException("unknown rate profile " + config.getRateProfile());
+        }
+    }
+
+    enum Type {
+        RANDOM, RAMP, STEP, SINE
+    }
+
+    /**
+     * Picks a random throughput between min and max and holds it for one interval (the original generator behavior).
+     */
+    class RandomRateProfile implements RateProfile {
+        private double min, max;
+        private long intervalNanos;
+        private Random random;
+        private long currentInterval = -1;
+        private double currentRate;
+
+        RandomRateProfile(double min, double max, long intervalNanos, Random random) {
+            this.min = min;
+            this.max = max;
+            this.intervalNanos = intervalNanos;
+            this.random = random;
+        }
+
+        @Override
+        public synchronized double rateAt(long elapsedNanos) {
+            long interval = elapsedNanos / intervalNanos;
+            if (interval != currentInterval) {
+                currentInterval = interval;
+                currentRate = min + random.nextDouble() * (max - min);
+            }
+            return currentRate;
+        }
+    }
+
+    /**
+     * Rises linearly from min to max over one interval, then holds max.
+     */
+    class RampRateProfile implements RateProfile {
+        private double min, max;
+        private long intervalNanos;
+
+        RampRateProfile(double min, double max, long intervalNanos) {
+            this.min = min;
+            this.max = max;
+            this.intervalNanos = intervalNanos;
+        }
+
+        @Override
+        public double rateAt(long elapsedNanos) {
+            if (elapsedNanos >= intervalNanos) return max;
+            return min + (max - min) * elapsedNanos / intervalNanos;
+        }
+    }
+
+    /**
+     * Climbs from min to max in equal steps, holding each step for one interval, then holds max.
+     */
+    class StepRateProfile implements RateProfile {
+        private double min, max;
+        private long intervalNanos;
+        private int steps;
+
+        StepRateProfile(double min, double max, long intervalNanos, int steps) {
+            this.min = min;
+            this.max = max;
+            this.intervalNanos = intervalNanos;
+            this.steps = steps;
+        }
+
+        @Override
+        public double rateAt(long elapsedNanos) {
+            if (steps <= 1) return max;
+            long step = Math.min(elapsedNanos / intervalNanos, steps - 1);
+            return min + (max - min) * step / (steps - 1);
+        }
+    }
+
+    /**
+     * Oscillates between min and max with a period of one interval, starting at the midpoint.
+     */
+    class SineRateProfile implements RateProfile {
+        private double min, max;
+        private long intervalNanos;
+
+        SineRateProfile(double min, double max, long intervalNanos) {
+            this.min = min;
+            this.max = max;
+            this.intervalNanos = intervalNanos;
+        }
+
+        @Override
+        public double rateAt(long elapsedNanos) {
+            double phase = 2 * Math.PI * (elapsedNanos % intervalNanos) / intervalNanos;
+            return min + (max - min) * (1 + Math.sin(phase)) / 2;
+        }
+    }
+}
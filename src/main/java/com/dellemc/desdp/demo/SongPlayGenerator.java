@@ -4,27 +4,84 @@ import io.pravega.client.ClientConfig;
 import io.pravega.client.EventStreamClientFactory;
 import io.pravega.client.stream.EventStreamWriter;
 import io.pravega.client.stream.EventWriterConfig;
-import io.pravega.client.stream.impl.UTF8StringSerializer;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.Transaction;
+import io.pravega.client.stream.TransactionalEventStreamWriter;
+import io.pravega.client.stream.TxnFailedException;
+import io.pravega.client.stream.impl.ByteBufferSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 public class SongPlayGenerator {
     private static Logger log = LoggerFactory.getLogger(SongPlayGenerator.class);
 
     private static final String SONG_MAP_RESOURCE = "/songs.lst";
-    public static final int DEFAULT_MIN_XPUT = 1; // per second
-    public static final int DEFAULT_MAX_XPUT = 20; // per second
+    public static final double DEFAULT_MIN_XPUT = 1; // per second
+    public static final double DEFAULT_MAX_XPUT = 20; // per second
     public static final int DEFAULT_XPUT_INTERVAL = 20; // seconds
+    public static final RateProfile.Type DEFAULT_RATE_PROFILE = RateProfile.Type.RANDOM;
+    public static final int DEFAULT_XPUT_STEPS = 5;
+    public static final int DEFAULT_THREADS = 1;
+    public static final EventFormat DEFAULT_EVENT_FORMAT = EventFormat.JSON;
+    public static final int DEFAULT_PLAYERS = 10000;
+    public static final String DEFAULT_DISTRIBUTION = "uniform";
+    // player IDs up to this many get a prebuilt routing key string
+    private static final int ROUTING_KEY_CACHE_SIZE = 1 << 20;
+    // random routing draws from this many prebuilt keys, whatever the number of players, so even a small player count
+    // hashes evenly over the segments (a segment gets its share of the pool within a few percent)
+    private static final int RANDOM_ROUTING_KEYS = 1 << 16;
+    // when no burst size is given, a rate limiter may catch up on (or save up) this much time worth of events
+    public static final double DEFAULT_BURST_SECONDS = 0.01;
+    private static final long XPUT_CHECK_INTERVAL = 100; // ms
+    public static final int DEFAULT_METRICS_INTERVAL = 10; // seconds
+    public static final int DEFAULT_MAX_IN_FLIGHT = 10000;
+    public static final int DEFAULT_WRITE_RETRIES = 3;
+    // how long stopping waits for in-flight writes to be acknowledged
+    private static final long SHUTDOWN_TIMEOUT = TimeUnit.SECONDS.toNanos(30);
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    public static final int DEFAULT_SCOPES = 1;
+    public static final int DEFAULT_STREAMS = 1;
+    // formats a scope or stream name from the configured name and a 1-based index, when there are several of them
+    public static final String DEFAULT_NAME_PATTERN = "%s-%d";
+    public static final StreamScaling DEFAULT_SCALING = StreamScaling.EVENT_RATE;
+    public static final int DEFAULT_SCALING_TARGET = 3; // events or KB per second and segment
+    public static final int DEFAULT_SCALE_FACTOR = 2;
+    public static final int DEFAULT_MIN_SEGMENTS = 1;
+    public static final Routing DEFAULT_ROUTING = Routing.PLAYER;
+    public static final int DEFAULT_TXN_EVENTS = 1000;
+    public static final int DEFAULT_TXN_MILLIS = 1000;
+    public static final int DEFAULT_MAX_OPEN_TXNS = 4;
+    // Pravega aborts a transaction that is neither committed nor aborted within its timeout
+    private static final long MIN_TXN_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * How events are spread over streams and segments. PLAYER picks both the stream and the routing key by player ID,
+     * so each player's plays stay in order, but a skewed player distribution loads some segments more than others.
+     * RANDOM picks them uniformly for every event, which loads all segments evenly and gives up the ordering.
+     */
+    enum Routing {
+        PLAYER, RANDOM
+    }
 
     private static List<String> _songList;
     private static Map<String, String> _artistMap;
@@ -54,103 +111,617 @@ public class SongPlayGenerator {
     }
 
     private Config config;
-    private Random random;
-    private AtomicInteger currentXput = new AtomicInteger();
-    private long lastIntervalChangeTime;
+    private Catalog catalog;
+    private PlayEventEncoder encoder;
+    private KeySampler songSampler;
+    private KeySampler playerSampler;
+    private String[] routingKeys; // by player ID, so routing keys are not rebuilt for every event
+    private String[] randomRoutingKeys; // only with random routing
+    private List<Stream> streams; // set by run()
+    private RateProfile rateProfile;
+    private long startTime = System.nanoTime();
+    private volatile double currentXput;
+    private GeneratorMetrics metrics = new GeneratorMetrics(this::getCurrentXput);
     private AtomicBoolean running = new AtomicBoolean();
+    private CountDownLatch terminated = new CountDownLatch(1);
 
     public SongPlayGenerator(Config config) {
         this.config = config;
-        this.random = new Random();
-        verifyXput(); // last change time will be 0 here, so this will set an initial xput
+        this.catalog = Catalog.load(config.getCatalogFile());
+        this.encoder = config.getEventFormat().createEncoder(catalog);
+        this.songSampler = KeySampler.create(config.getSongDistribution(), catalog.getSongCount());
+        this.playerSampler = KeySampler.create(config.getPlayerDistribution(), config.getPlayers());
+        this.routingKeys = new String[Math.min(config.getPlayers(), ROUTING_KEY_CACHE_SIZE) + 1];
+        for (int playerId = 1; playerId < routingKeys.length; playerId++) {
+            routingKeys[playerId] = Integer.toString(playerId);
+        }
+        if (config.getRouting() == Routing.RANDOM) {
+            this.randomRoutingKeys = new String[RANDOM_ROUTING_KEYS];
+            for (int i = 0; i < randomRoutingKeys.length; i++) {
+                randomRoutingKeys[i] = Integer.toHexString(i);
+            }
+        }
+        this.rateProfile = RateProfile.create(config);
+        verifyXput(); // sets the initial xput
+    }
+
+    /**
+     * @return every stream of every scope written to. A single scope or stream keeps the configured name, several
+     * are named by the name pattern.
+     */
+    static List<Stream> targetStreams(Config config) {
+        List<Stream> streams = new ArrayList<>();
+        for (int i = 1; i <= config.getScopes(); i++) {
+            String scope = config.getScopes() == 1 ? config.getScope()
+                    : String.format(config.getNamePattern(), config.getScope(), i);
+            for (int j = 1; j <= config.getStreams(); j++) {
+                String stream = config.getStreams() == 1 ? config.getStream()
+                        : String.format(config.getNamePattern(), config.getStream(), j);
+                streams.add(Stream.of(scope, stream));
+            }
+        }
+        return streams;
     }
     public void run() {
         running.set(true);
+        startTime = System.nanoTime();
+        verifyXput();
 
-        // create stream
+        // create streams
+        streams = targetStreams(config);
         ClientConfig clientConfig = Utils.createClientConfig(config);
-        Utils.createStream(clientConfig);
+        Utils.createStreams(clientConfig, streams,
+                config.getScaling().createPolicy(config.getScalingTarget(), config.getScaleFactor(), config.getMinSegments()));
+        log.info("writing to {} stream(s): {}", streams.size(), streams);
 
-        // create client factory and event writer
-        try (EventStreamClientFactory clientFactory = EventStreamClientFactory.withScope(config.getScope(), clientConfig);
-             EventStreamWriter<String> writer = clientFactory.createEventWriter(
-                     config.getStream(), new UTF8StringSerializer(), EventWriterConfig.builder().build())) {
+        metrics.registerMBean();
+        MetricsHttpServer metricsServer = startMetricsServer();
 
-            // loop until stopped
-            while (running.get()) {
+        // on Ctrl-C or SIGTERM, stop writing and wait for the writes in flight before the JVM exits
+        Thread shutdownHook = new Thread(() -> {
+            stop();
+            try {
+                if (!terminated.await(SHUTDOWN_TIMEOUT, TimeUnit.NANOSECONDS))
+                    log.warn("generator did not finish its in-flight writes before shutdown");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "generator-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        // one client factory (and its connection pool) per scope is shared by all producer threads
+        Map<String, EventStreamClientFactory> clientFactories = new LinkedHashMap<>();
+        try {
+            for (Stream stream : streams) {
+                clientFactories.computeIfAbsent(stream.getScope(),
+                        scope -> EventStreamClientFactory.withScope(scope, clientConfig));
+            }
+
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < config.getThreads(); i++) {
+                Runnable task = config.isTransactional()
+                        ? new TransactionalWorker(clientFactories) : new Worker(clientFactories);
+                Thread worker = new Thread(task, "generator-" + i);
+                worker.start();
+                workers.add(worker);
+            }
 
-                // use the player ID as the routing key (guarantees order for each player)
-                String playerId = generatePlayerId();
-                String message = generatePlayMessage(playerId);
-                log.info("Writing message (key: {}, message: {}) to stream {} / {}",
-                        playerId, message, config.getScope(), config.getStream());
-                writer.writeEvent(playerId, message);
+            // the main thread only drives the throughput changes and reporting; the workers pick up the new rate
+            long metricsIntervalNanos = TimeUnit.SECONDS.toNanos(config.getMetricsInterval());
+            long nextReport = System.nanoTime() + metricsIntervalNanos;
+            while (running.get()) {
                 verifyXput();
-                throttle();
+                if (System.nanoTime() >= nextReport) {
+                    metrics.report();
+                    nextReport += metricsIntervalNanos;
+                }
+                try {
+                    Thread.sleep(XPUT_CHECK_INTERVAL);
+                } catch (InterruptedException e) {
+                    log.warn("interrupted while waiting for workers", e);
+                    running.set(false);
+                }
+            }
+
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    log.warn("interrupted while joining worker {}", worker.getName(), e);
+                }
+            }
+        } finally {
+            clientFactories.values().forEach(EventStreamClientFactory::close);
+            metrics.report();
+            if (metricsServer != null) metricsServer.close();
+            metrics.unregisterMBean();
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // the JVM is already shutting down and the hook is waiting for us
             }
+            terminated.countDown();
         }
     }
 
+    private MetricsHttpServer startMetricsServer() {
+        if (config.getMetricsPort() == 0) return null;
+        try {
+            MetricsHttpServer server = new MetricsHttpServer(config.getMetricsPort(), metrics::toPrometheus);
+            log.info("serving metrics at http://localhost:{}/metrics", server.getPort());
+            return server;
+        } catch (IOException e) {
+            log.warn("could not start the metrics endpoint on port {}", config.getMetricsPort(), e);
+            return null;
+        }
+    }
+
+    public GeneratorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stops writing new events. {@link #run()} returns once the writes in flight have been acknowledged (or have
+     * failed), or after a timeout.
+     */
     public void stop() {
         running.set(false);
     }
 
+    /**
+     * Generates events at its share of the current throughput and hands each to {@link #write}. Subclasses decide how
+     * events reach the target streams and how many may be unacknowledged at once.
+     */
+    abstract class AbstractWorker implements Runnable {
+        final Map<String, EventStreamClientFactory> clientFactories;
+
+        AbstractWorker(Map<String, EventStreamClientFactory> clientFactories) {
+            this.clientFactories = clientFactories;
+        }
+
+        @Override
+        public void run() {
+            try {
+                open();
+
+                double xput = currentXput;
+                RateLimiter rateLimiter = new RateLimiter(share(xput), burstShare(xput));
+                long written = 0;
+                while (running.get()) {
+                    poll();
+
+                    // pick up throughput changes from the rate profile
+                    if (xput != currentXput) {
+                        xput = currentXput;
+                        rateLimiter.setRate(share(xput), burstShare(xput));
+                    }
+
+                    // wait in short slices so a stop() is noticed even at very low rates
+                    if (!rateLimiter.acquire(MAX_WAIT_NANOS)) continue;
+
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int playerId = playerSampler.next(random) + 1;
+                    int songId = songSampler.next(random);
+                    int target;
+                    String routingKey;
+                    if (config.getRouting() == Routing.PLAYER) {
+                        // use the player ID as the routing key (guarantees order for each player)
+                        target = playerId % streams.size();
+                        routingKey = routingKey(playerId);
+                    } else {
+                        // any key from the random routing pool; they hash evenly over the key space of the segments
+                        target = random.nextInt(streams.size());
+                        routingKey = randomRoutingKeys[random.nextInt(randomRoutingKeys.length)];
+                    }
+                    if (!acquireSlot(target)) break;
+
+                    // the client holds on to the event buffer until the write is acknowledged, so it can't be reused;
+                    // size it exactly so this is the only allocation per event
+                    long timestamp = System.currentTimeMillis();
+                    ByteBuffer message = ByteBuffer.allocate(encoder.encodedLength(playerId, songId, timestamp));
+                    encoder.encode(playerId, songId, timestamp, message);
+                    message.flip();
+                    if (log.isDebugEnabled())
+                        log.debug("Writing message (key: {}, song: {}, {} bytes) to stream {}", routingKey,
+                                catalog.getSong(songId), message.remaining(), streams.get(target).getScopedName());
+
+                    write(target, routingKey, message);
+                    metrics.written();
+                    written++;
+                }
+                drain();
+                log.info("{} wrote {} events", Thread.currentThread().getName(), written);
+            } catch (InterruptedException e) {
+                log.warn("{} interrupted, closing its writers without waiting for acknowledgements",
+                        Thread.currentThread().getName());
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Creates the writers, one for each target stream.
+         */
+        abstract void open();
+
+        /**
+         * Called on every turn of the loop, also when no event is due.
+         */
+        abstract void poll();
+
+        /**
+         * Waits until an event for stream {@code target} may be written.
+         *
+         * @return false if the generator was stopped while waiting
+         */
+        abstract boolean acquireSlot(int target) throws InterruptedException;
+
+        abstract void write(int target, String routingKey, ByteBuffer message);
+
+        /**
+         * Waits until every event written is acknowledged or has finally failed, or until the shutdown timeout.
+         */
+        abstract void drain() throws InterruptedException;
+
+        abstract void close();
+    }
+
+    /**
+     * Writes each event on its own, with one writer for each target stream. Writes are not awaited, but at most
+     * {@code window} of them are in flight at once: when the window is full the worker waits for acknowledgements,
+     * which is the generator's only backpressure. Failed writes are retried by the worker thread up to the configured
+     * number of times, and hold their slot in the window until then.
+     */
+    class Worker extends AbstractWorker {
+        private final int window = Math.max(1, config.getMaxInFlight() / config.getThreads());
+        private final Semaphore inFlight = new Semaphore(window);
+        private final Queue<PendingWrite> retries = new ConcurrentLinkedQueue<>();
+
+        private final List<EventStreamWriter<ByteBuffer>> writers = new ArrayList<>(); // by index in streams
+
+        Worker(Map<String, EventStreamClientFactory> clientFactories) {
+            super(clientFactories);
+        }
+
+        @Override
+        void open() {
+            for (Stream stream : streams) {
+                writers.add(clientFactories.get(stream.getScope()).createEventWriter(
+                        stream.getStreamName(), new ByteBufferSerializer(), EventWriterConfig.builder().build()));
+            }
+        }
+
+        @Override
+        void poll() {
+            retry();
+        }
+
+        @Override
+        void write(int target, String routingKey, ByteBuffer message) {
+            write(new PendingWrite(writers.get(target), routingKey, message));
+        }
+
+        @Override
+        void close() {
+            writers.forEach(EventStreamWriter::close);
+        }
+
+        // resubmits failed writes while the window is full
+        @Override
+        boolean acquireSlot(int target) throws InterruptedException {
+            while (!inFlight.tryAcquire(MAX_WAIT_NANOS, TimeUnit.NANOSECONDS)) {
+                retry();
+                if (!running.get()) return false;
+            }
+            return true;
+        }
+
+        private void write(PendingWrite write) {
+            // a retry sends the same bytes again, whatever the first attempt did with the buffer's position
+            ByteBuffer message = write.attempts++ == 0 ? write.message : (ByteBuffer) write.message.duplicate().rewind();
+            write.writer.writeEvent(write.routingKey, message).whenComplete(write);
+        }
+
+        private void retry() {
+            PendingWrite write;
+            while ((write = retries.poll()) != null) {
+                write(write);
+            }
+        }
+
+        @Override
+        void drain() throws InterruptedException {
+            long deadline = System.nanoTime() + SHUTDOWN_TIMEOUT;
+            while (true) {
+                retry();
+                writers.forEach(EventStreamWriter::flush);
+                if (inFlight.tryAcquire(window, XPUT_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    inFlight.release(window);
+                    return;
+                }
+                if (System.nanoTime() > deadline) {
+                    log.warn("{} gave up on {} unacknowledged writes", Thread.currentThread().getName(),
+                            window - inFlight.availablePermits());
+                    return;
+                }
+            }
+        }
+
+        /**
+         * One event from its first submission until it is acknowledged or has failed for the last time. Also the
+         * completion callback of each attempt, so tracking a write allocates nothing else.
+         */
+        class PendingWrite implements BiConsumer<Void, Throwable> {
+            final EventStreamWriter<ByteBuffer> writer;
+            final String routingKey;
+            final ByteBuffer message;
+            final long start = System.nanoTime();
+            int attempts;
+
+            PendingWrite(EventStreamWriter<ByteBuffer> writer, String routingKey, ByteBuffer message) {
+                this.writer = writer;
+                this.routingKey = routingKey;
+                this.message = message;
+            }
+
+            @Override
+            public void accept(Void result, Throwable failure) {
+                if (failure != null && attempts <= config.getWriteRetries()) {
+                    log.debug("retrying write to {} after attempt {} failed", routingKey, attempts, failure);
+                    metrics.retried();
+                    retries.add(this);
+                    return;
+                }
+                if (failure != null) log.warn("dropping event for {} after {} attempts", routingKey, attempts, failure);
+                metrics.acked(start, message.limit(), failure);
+                inFlight.release();
+            }
+        }
+    }
+
+    /**
+     * Writes events in Pravega transactions, one open transaction per target stream. A transaction is committed once it
+     * holds {@code txnEvents} events or has been open for {@code txnMillis}, on a committer thread, while the worker
+     * goes on with a new one. Each worker has at most {@code window} transactions open or committing, but at least one
+     * per stream; when it needs another, it commits its oldest open transaction early and waits for a commit to
+     * finish, which is the backpressure of this mode. The events of a failed transaction are aborted together and not
+     * retried.
+     */
+    class TransactionalWorker extends AbstractWorker {
+        // every stream needs an open transaction, or switching streams would wait for a commit each time
+        private final int window = Math.max(streams.size(), config.getMaxOpenTxns() / config.getThreads());
+        private final Semaphore openTxns = new Semaphore(window);
+        private final long txnNanos = TimeUnit.MILLISECONDS.toNanos(config.getTxnMillis());
+
+        private final List<TransactionalEventStreamWriter<ByteBuffer>> writers = new ArrayList<>(); // by index in streams
+        private final Batch[] batches = new Batch[streams.size()]; // the open transaction of each stream, if any
+        private ExecutorService committer;
+
+        TransactionalWorker(Map<String, EventStreamClientFactory> clientFactories) {
+            super(clientFactories);
+        }
+
+        @Override
+        void open() {
+            EventWriterConfig writerConfig = EventWriterConfig.builder()
+                    .transactionTimeoutTime(Math.max(MIN_TXN_TIMEOUT, 2L * config.getTxnMillis()))
+                    .build();
+            for (Stream stream : streams) {
+                writers.add(clientFactories.get(stream.getScope()).createTransactionalEventWriter(
+                        stream.getStreamName(), new ByteBufferSerializer(), writerConfig));
+            }
+            String name = Thread.currentThread().getName() + "-commit";
+            committer = Executors.newFixedThreadPool(window, runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        // commits the transactions that have been open for long enough
+        @Override
+        void poll() {
+            long now = System.nanoTime();
+            for (int target = 0; target < batches.length; target++) {
+                if (batches[target] != null && now - batches[target].start >= txnNanos) commit(target);
+            }
+        }
+
+        @Override
+        boolean acquireSlot(int target) throws InterruptedException {
+            if (batches[target] != null) return true;
+            if (!openTxns.tryAcquire()) {
+                commitOldest();
+                while (!openTxns.tryAcquire(MAX_WAIT_NANOS, TimeUnit.NANOSECONDS)) {
+                    poll();
+                    if (!running.get()) return false;
+                }
+            }
+            try {
+                batches[target] = new Batch(writers.get(target).beginTxn());
+            } catch (RuntimeException e) {
+                openTxns.release();
+                throw e;
+            }
+            return true;
+        }
+
+        @Override
+        void write(int target, String routingKey, ByteBuffer message) {
+            Batch batch = batches[target];
+            int bytes = message.remaining();
+            try {
+                batch.txn.writeEvent(routingKey, message);
+                batch.events++;
+                batch.bytes += bytes;
+            } catch (TxnFailedException e) {
+                batches[target] = null;
+                batch.events++; // the event that failed
+                batch.abort(e);
+                return;
+            }
+            if (batch.events >= config.getTxnEvents()) commit(target);
+        }
+
+        private void commit(int target) {
+            Batch batch = batches[target];
+            batches[target] = null;
+            committer.execute(batch);
+        }
+
+        private void commitOldest() {
+            int oldest = -1;
+            for (int target = 0; target < batches.length; target++) {
+                if (batches[target] != null && (oldest < 0 || batches[target].start < batches[oldest].start))
+                    oldest = target;
+            }
+            if (oldest >= 0) commit(oldest);
+        }
+
+        @Override
+        void drain() throws InterruptedException {
+            for (int target = 0; target < batches.length; target++) {
+                if (batches[target] != null) commit(target);
+            }
+            if (!openTxns.tryAcquire(window, SHUTDOWN_TIMEOUT, TimeUnit.NANOSECONDS)) {
+                log.warn("{} gave up on {} uncommitted transactions", Thread.currentThread().getName(),
+                        window - openTxns.availablePermits());
+                return;
+            }
+            openTxns.release(window);
+        }
+
+        @Override
+        void close() {
+            // only left after an interrupt; the transactions being committed are abandoned with their threads
+            for (int target = 0; target < batches.length; target++) {
+                if (batches[target] != null) batches[target].abort(null);
+                batches[target] = null;
+            }
+            if (committer != null) committer.shutdownNow();
+            writers.forEach(TransactionalEventStreamWriter::close);
+        }
+
+        /**
+         * An open transaction and what was written to it. Committed by a committer thread, after which its slot in
+         * the window is free again.
+         */
+        class Batch implements Runnable {
+            final Transaction<ByteBuffer> txn;
+            final long start = System.nanoTime();
+            int events;
+            long bytes;
+
+            Batch(Transaction<ByteBuffer> txn) {
+                this.txn = txn;
+            }
+
+            @Override
+            public void run() {
+                long commitStart = System.nanoTime();
+                try {
+                    txn.commit();
+                    metrics.committed(events, bytes, start, commitStart);
+                    openTxns.release();
+                } catch (TxnFailedException | RuntimeException e) {
+                    abort(e);
+                }
+            }
+
+            void abort(Exception cause) {
+                try {
+                    txn.abort();
+                } catch (RuntimeException e) {
+                    log.debug("could not abort transaction {}", txn.getTxnId(), e);
+                }
+                if (cause != null) log.warn("aborted transaction {} with {} events", txn.getTxnId(), events, cause);
+                metrics.aborted(events);
+                openTxns.release();
+            }
+        }
+    }
+
+    String routingKey(int playerId) {
+        return playerId < routingKeys.length ? routingKeys[playerId] : Integer.toString(playerId);
+    }
+
     String generatePlayerId() {
         // just generate a random integer between 1 and 10,000
-        return "" + (random.nextInt(10000) + 1);
+        return "" + (ThreadLocalRandom.current().nextInt(DEFAULT_PLAYERS) + 1);
     }
 
     String generatePlayMessage(String playerId) {
 
         // pull a random song from the song list
-        String song = getSongList().get(random.nextInt(getSongList().size()));
+        List<String> songList = getSongList();
+        String song = songList.get(ThreadLocalRandom.current().nextInt(songList.size()));
 
         // get the artist
         String artist = getArtistMap().get(song);
         return "{" +
                 "\"playerId\": \"" + playerId + "\"," +
                 "\"song\": \"" + song + "\"," +
-                "\"artist\": \"" + artist + "\"" +
+                "\"artist\": \"" + artist + "\"," +
+                "\"timestamp\": " + System.currentTimeMillis() +
                 "}";
     }
 
     void verifyXput() {
-        if (System.currentTimeMillis() - lastIntervalChangeTime > config.getXputInterval() * 1000) {
-
-            // time to change up the xput
-            currentXput.set(randomizeXput());
-            lastIntervalChangeTime = System.currentTimeMillis();
+        double xput = rateProfile.rateAt(System.nanoTime() - startTime);
+        if (xput != currentXput) {
+            currentXput = xput;
+            log.debug("throughput is now {} events/s across {} thread(s)", xput, config.getThreads());
         }
     }
 
-    int randomizeXput() {
-        if (config.getMaxXput() > config.getMinXput())
-            return random.nextInt(config.getMaxXput() - config.getMinXput()) + config.getMinXput();
-        else return config.getMinXput();
+    // each worker paces its own share of the total xput
+    double share(double xput) {
+        return xput / config.getThreads();
     }
 
-    void throttle() {
-        long sleepTime = 1000 / currentXput.get();
-        try {
-            Thread.sleep(sleepTime);
-        } catch (InterruptedException e) {
-            log.warn("interrupted while throttling", e);
-        }
+    double burstShare(double xput) {
+        double burst = config.getBurst() > 0 ? config.getBurst() : xput * DEFAULT_BURST_SECONDS;
+        return Math.max(1, burst / config.getThreads());
     }
 
-    public int getCurrentXput() {
-        return currentXput.get();
+    public double getCurrentXput() {
+        return currentXput;
     }
 
     static class Config extends Utils.Config{
-        int minXput = DEFAULT_MIN_XPUT;
-        int maxXput = DEFAULT_MAX_XPUT;
+        double minXput = DEFAULT_MIN_XPUT;
+        double maxXput = DEFAULT_MAX_XPUT;
         int xputInterval = DEFAULT_XPUT_INTERVAL;
+        RateProfile.Type rateProfile = DEFAULT_RATE_PROFILE;
+        int xputSteps = DEFAULT_XPUT_STEPS;
+        double burst; // 0 means derived from the current xput
+        int threads = DEFAULT_THREADS;
+        EventFormat eventFormat = DEFAULT_EVENT_FORMAT;
+        int players = DEFAULT_PLAYERS;
+        String songDistribution = DEFAULT_DISTRIBUTION;
+        String playerDistribution = DEFAULT_DISTRIBUTION;
+        int metricsInterval = DEFAULT_METRICS_INTERVAL;
+        int metricsPort; // 0 disables the metrics endpoint
+        int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        int writeRetries = DEFAULT_WRITE_RETRIES;
+        int scopes = DEFAULT_SCOPES;
+        int streams = DEFAULT_STREAMS;
+        String namePattern = DEFAULT_NAME_PATTERN;
+        StreamScaling scaling = DEFAULT_SCALING;
+        int scalingTarget = DEFAULT_SCALING_TARGET;
+        int scaleFactor = DEFAULT_SCALE_FACTOR;
+        int minSegments = DEFAULT_MIN_SEGMENTS;
+        boolean transactional;
+        int txnEvents = DEFAULT_TXN_EVENTS;
+        int txnMillis = DEFAULT_TXN_MILLIS;
+        int maxOpenTxns = DEFAULT_MAX_OPEN_TXNS;
+        Routing routing = DEFAULT_ROUTING;
 
         public Config() {
         }
 
-        public Config(String controllerEndpoint, String scope, String stream, boolean useKeycloak, int minXput, int maxXput, int xputInterval) {
+        public Config(String controllerEndpoint, String scope, String stream, boolean useKeycloak, double minXput, double maxXput, int xputInterval) {
             if (minXput > maxXput) {
                 throw new IllegalArgumentException("max xput must be greater than or equal to min xput");
             }
@@ -164,25 +735,34 @@ public class SongPlayGenerator {
             setXputInterval(xputInterval);
         }
 
-        public int getMinXput() {
+        public double getMinXput() {
             return minXput;
         }
 
-        public void setMinXput(int minXput) {
+        public void setMinXput(double minXput) {
             if (minXput <= 0) throw new IllegalArgumentException("min xput must be greater than 0");
             this.minXput = minXput;
         }
 
-        public int getMaxXput() {
+        public double getMaxXput() {
             return maxXput;
         }
 
-        public void setMaxXput(int maxXput) {
+        public void setMaxXput(double maxXput) {
             if (minXput > maxXput)
                 throw new IllegalArgumentException("max xput must be greater than or equal to min xput");
             this.maxXput = maxXput;
         }
 
+        /**
+         * Sets a constant throughput, as both the min and the max xput.
+         */
+        public void setXput(double xput) {
+            if (xput <= 0) throw new IllegalArgumentException("xput must be greater than 0");
+            this.minXput = xput;
+            this.maxXput = xput;
+        }
+
         public int getXputInterval() {
             return xputInterval;
         }
@@ -192,6 +772,222 @@ public class SongPlayGenerator {
             this.xputInterval = xputInterval;
         }
 
+        public RateProfile.Type getRateProfile() {
+            return rateProfile;
+        }
+
+        public void setRateProfile(RateProfile.Type rateProfile) {
+            if (rateProfile == null) throw new IllegalArgumentException("rate profile is required");
+            this.rateProfile = rateProfile;
+        }
+
+        public int getXputSteps() {
+            return xputSteps;
+        }
+
+        public void setXputSteps(int xputSteps) {
+            if (xputSteps <= 0) throw new IllegalArgumentException("xput steps must be greater than 0");
+            this.xputSteps = xputSteps;
+        }
+
+        public double getBurst() {
+            return burst;
+        }
+
+        public void setBurst(double burst) {
+            if (burst < 0) throw new IllegalArgumentException("burst must not be negative");
+            this.burst = burst;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            if (threads <= 0) throw new IllegalArgumentException("threads must be greater than 0");
+            this.threads = threads;
+        }
+
+        public EventFormat getEventFormat() {
+            return eventFormat;
+        }
+
+        public void setEventFormat(EventFormat eventFormat) {
+            if (eventFormat == null) throw new IllegalArgumentException("event format is required");
+            this.eventFormat = eventFormat;
+        }
+
+        public int getPlayers() {
+            return players;
+        }
+
+        public void setPlayers(int players) {
+            if (players <= 0) throw new IllegalArgumentException("players must be greater than 0");
+            this.players = players;
+        }
+
+        public String getSongDistribution() {
+            return songDistribution;
+        }
+
+        public void setSongDistribution(String songDistribution) {
+            KeySampler.create(songDistribution, 2); // validates the spec
+            this.songDistribution = songDistribution;
+        }
+
+        public String getPlayerDistribution() {
+            return playerDistribution;
+        }
+
+        public void setPlayerDistribution(String playerDistribution) {
+            KeySampler.create(playerDistribution, 2); // validates the spec
+            this.playerDistribution = playerDistribution;
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public void setMaxInFlight(int maxInFlight) {
+            if (maxInFlight <= 0) throw new IllegalArgumentException("max in flight must be greater than 0");
+            this.maxInFlight = maxInFlight;
+        }
+
+        public int getWriteRetries() {
+            return writeRetries;
+        }
+
+        public void setWriteRetries(int writeRetries) {
+            if (writeRetries < 0) throw new IllegalArgumentException("write retries must not be negative");
+            this.writeRetries = writeRetries;
+        }
+
+        public boolean isTransactional() {
+            return transactional;
+        }
+
+        public void setTransactional(boolean transactional) {
+            this.transactional = transactional;
+        }
+
+        public int getTxnEvents() {
+            return txnEvents;
+        }
+
+        public void setTxnEvents(int txnEvents) {
+            if (txnEvents <= 0) throw new IllegalArgumentException("transaction events must be greater than 0");
+            this.txnEvents = txnEvents;
+        }
+
+        public int getTxnMillis() {
+            return txnMillis;
+        }
+
+        public void setTxnMillis(int txnMillis) {
+            if (txnMillis <= 0) throw new IllegalArgumentException("transaction millis must be greater than 0");
+            this.txnMillis = txnMillis;
+        }
+
+        public int getMaxOpenTxns() {
+            return maxOpenTxns;
+        }
+
+        public void setMaxOpenTxns(int maxOpenTxns) {
+            if (maxOpenTxns <= 0) throw new IllegalArgumentException("max open transactions must be greater than 0");
+            this.maxOpenTxns = maxOpenTxns;
+        }
+
+        public int getScopes() {
+            return scopes;
+        }
+
+        public void setScopes(int scopes) {
+            if (scopes <= 0) throw new IllegalArgumentException("scopes must be greater than 0");
+            this.scopes = scopes;
+        }
+
+        public int getStreams() {
+            return streams;
+        }
+
+        public void setStreams(int streams) {
+            if (streams <= 0) throw new IllegalArgumentException("streams must be greater than 0");
+            this.streams = streams;
+        }
+
+        public String getNamePattern() {
+            return namePattern;
+        }
+
+        public void setNamePattern(String namePattern) {
+            if (namePattern == null || String.format(namePattern, "name", 1).equals(String.format(namePattern, "name", 2)))
+                throw new IllegalArgumentException("name pattern must contain the index, e.g. " + DEFAULT_NAME_PATTERN);
+            this.namePattern = namePattern;
+        }
+
+        public StreamScaling getScaling() {
+            return scaling;
+        }
+
+        public void setScaling(StreamScaling scaling) {
+            if (scaling == null) throw new IllegalArgumentException("scaling is required");
+            this.scaling = scaling;
+        }
+
+        public int getScalingTarget() {
+            return scalingTarget;
+        }
+
+        public void setScalingTarget(int scalingTarget) {
+            if (scalingTarget <= 0) throw new IllegalArgumentException("scaling target must be greater than 0");
+            this.scalingTarget = scalingTarget;
+        }
+
+        public int getScaleFactor() {
+            return scaleFactor;
+        }
+
+        public void setScaleFactor(int scaleFactor) {
+            if (scaleFactor < 2) throw new IllegalArgumentException("scale factor must be at least 2");
+            this.scaleFactor = scaleFactor;
+        }
+
+        public int getMinSegments() {
+            return minSegments;
+        }
+
+        public void setMinSegments(int minSegments) {
+            if (minSegments <= 0) throw new IllegalArgumentException("min segments must be greater than 0");
+            this.minSegments = minSegments;
+        }
+
+        public Routing getRouting() {
+            return routing;
+        }
+
+        public void setRouting(Routing routing) {
+            if (routing == null) throw new IllegalArgumentException("routing is required");
+            this.routing = routing;
+        }
+
+        public int getMetricsInterval() {
+            return metricsInterval;
+        }
+
+        public void setMetricsInterval(int metricsInterval) {
+            if (metricsInterval <= 0) throw new IllegalArgumentException("metrics interval must be greater than 0");
+            this.metricsInterval = metricsInterval;
+        }
+
+        public int getMetricsPort() {
+            return metricsPort;
+        }
+
+        public void setMetricsPort(int metricsPort) {
+            if (metricsPort < 0 || metricsPort > 65535) throw new IllegalArgumentException("metrics port must be between 0 and 65535");
+            this.metricsPort = metricsPort;
+        }
+
         @Override
         public String toString() {
             return "Config{" +
@@ -202,6 +998,31 @@ public class SongPlayGenerator {
                     ", minXput=" + minXput +
                     ", maxXput=" + maxXput +
                     ", xputInterval=" + xputInterval +
+                    ", rateProfile=" + rateProfile +
+                    ", xputSteps=" + xputSteps +
+                    ", burst=" + burst +
+                    ", threads=" + threads +
+                    ", eventFormat=" + eventFormat +
+                    ", players=" + players +
+                    ", songDistribution=" + songDistribution +
+                    ", playerDistribution=" + playerDistribution +
+                    ", maxInFlight=" + maxInFlight +
+                    ", writeRetries=" + writeRetries +
+                    ", transactional=" + transactional +
+                    ", txnEvents=" + txnEvents +
+                    ", txnMillis=" + txnMillis +
+                    ", maxOpenTxns=" + maxOpenTxns +
+                    ", scopes=" + scopes +
+                    ", streams=" + streams +
+                    ", namePattern=" + namePattern +
+                    ", scaling=" + scaling +
+                    ", scalingTarget=" + scalingTarget +
+                    ", scaleFactor=" + scaleFactor +
+                    ", minSegments=" + minSegments +
+                    ", routing=" + routing +
+                    ", metricsInterval=" + metricsInterval +
+                    ", metricsPort=" + metricsPort +
+                    ", catalogFile=" + catalogFile +
                     '}';
         }
     }
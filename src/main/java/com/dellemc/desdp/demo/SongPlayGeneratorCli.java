@@ -1,10 +1,14 @@
 package com.dellemc.desdp.demo;
 
 import org.apache.commons.cli.*;
+import org.apache.flink.streaming.api.CheckpointingMode;
+import org.apache.flink.streaming.connectors.elasticsearch.ElasticsearchSinkBase.FlushBackoffType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 
 public class SongPlayGeneratorCli {
     private static final Logger log = LoggerFactory.getLogger(SongPlayGeneratorCli.class);
@@ -21,20 +25,163 @@ public class SongPlayGeneratorCli {
         options.addOption(Option.builder("k").longOpt("use-keycloak").desc("This enables Keycloak authentication for use with Streaming Data Platform. You must have a valid keycloak.json file in your home directory")
                 .build());
 
+        options.addOption(Option.builder().longOpt("catalog").desc("File of song::artist lines to generate and aggregate plays for. Writer and reader must use the same catalog. Default is the bundled songs.lst")
+                .hasArg().argName("file").build());
+
         options.addOption(Option.builder("e").longOpt("es-url").desc("Elastic Search URL")
                 .hasArg().argName("elasticsearch-uri").build());
+        options.addOption(Option.builder().longOpt("es-bulk-actions").desc("Number of updates buffered before the reader sends a bulk request to Elastic Search. Default is " + SongPlayReader.DEFAULT_BULK_ACTIONS_ES)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("es-bulk-size").desc("Size of buffered updates that triggers a bulk request to Elastic Search. Default is " + SongPlayReader.DEFAULT_BULK_SIZE_MB_ES)
+                .hasArg().argName("mb").build());
+        options.addOption(Option.builder().longOpt("es-flush-interval").desc("Maximum time between bulk requests to Elastic Search, regardless of size. Default is " + SongPlayReader.DEFAULT_FLUSH_INTERVAL_ES)
+                .hasArg().argName("millis").build());
+        options.addOption(Option.builder().longOpt("es-backoff").desc("Backoff between retries of failed bulk requests: constant, exponential or none. Default is " + SongPlayReader.DEFAULT_BACKOFF_TYPE_ES.name().toLowerCase())
+                .hasArg().argName("type").build());
+        options.addOption(Option.builder().longOpt("es-backoff-delay").desc("Initial delay between retries of failed bulk requests. Default is " + SongPlayReader.DEFAULT_BACKOFF_DELAY_ES)
+                .hasArg().argName("millis").build());
+        options.addOption(Option.builder().longOpt("es-backoff-retries").desc("Number of times a failed bulk request is retried. Default is " + SongPlayReader.DEFAULT_BACKOFF_RETRIES_ES)
+                .hasArg().argName("count").build());
 
         options.addOption(Option.builder("r").longOpt("reader").desc("This will read the stream and send the data to Elastic Search")
                 .build());
         options.addOption(Option.builder("w").longOpt("writer").desc("This will generate random song plays and writes them to a Pravega stream")
                 .build());
 
+        options.addOption(Option.builder().longOpt("window").desc("Count plays per window and write the top artists of each window instead of a running count per event: tumbling or sliding")
+                .hasArg().argName("type").build());
+        options.addOption(Option.builder().longOpt("window-size").desc("Length of the counting window. Default is " + SongPlayReader.DEFAULT_WINDOW_SIZE)
+                .hasArg().argName("seconds").build());
+        options.addOption(Option.builder().longOpt("window-slide").desc("Time between the starts of sliding windows. Default is " + SongPlayReader.DEFAULT_WINDOW_SLIDE)
+                .hasArg().argName("seconds").build());
+        options.addOption(Option.builder().longOpt("top-n").desc("Number of top artists written per window. Default is " + SongPlayReader.DEFAULT_TOP_N)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("heavy-hitters").desc("Write the approximate top songs of each window, counted with Count-Min sketches in fixed memory, instead of artist counts")
+                .build());
+        options.addOption(Option.builder().longOpt("sketch-width").desc("Counters per row of the Count-Min sketches, a power of 2; the error bound is e / width of the plays in the window. Default is " + SongPlayReader.DEFAULT_SKETCH_WIDTH)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("sketch-depth").desc("Rows of the Count-Min sketches; the error bound holds with probability 1 - e^-depth. Default is " + SongPlayReader.DEFAULT_SKETCH_DEPTH)
+                .hasArg().argName("count").build());
+
+        options.addOption(Option.builder().longOpt("event-time").desc("Window plays by the time the generator created them instead of the time they are read")
+                .build());
+        options.addOption(Option.builder().longOpt("max-out-of-orderness").desc("How far behind the newest event timestamp an event may arrive and still be counted on time. Default is " + SongPlayReader.DEFAULT_MAX_OUT_OF_ORDERNESS)
+                .hasArg().argName("millis").build());
+        options.addOption(Option.builder().longOpt("allowed-lateness").desc("How long a window keeps accepting late events, updating its result, after it has fired. Default is " + SongPlayReader.DEFAULT_ALLOWED_LATENESS)
+                .hasArg().argName("millis").build());
+
+        options.addOption(Option.builder().longOpt("pre-aggregate").desc("Sum running artist counts within each reader subtask before shuffling them by artist")
+                .build());
+        options.addOption(Option.builder().longOpt("pre-aggregate-events").desc("Flush pre-aggregated counts after this many events. Default is " + SongPlayReader.DEFAULT_PRE_AGGREGATE_EVENTS)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("pre-aggregate-millis").desc("Flush pre-aggregated counts after this much time. Default is " + SongPlayReader.DEFAULT_PRE_AGGREGATE_MILLIS)
+                .hasArg().argName("millis").build());
+        options.addOption(Option.builder().longOpt("pre-aggregate-keys").desc("Flush pre-aggregated counts when this many artists are pending. Default is " + SongPlayReader.DEFAULT_PRE_AGGREGATE_KEYS)
+                .hasArg().argName("count").build());
+
+        options.addOption(Option.builder().longOpt("sql").desc("Compute the running counts or top artists with Flink SQL instead of DataStream operators. Results go to the same sinks")
+                .build());
+        options.addOption(Option.builder().longOpt("sql-query").desc("An additional query over the table plays (playerId, songId, artistId, playTime) whose results are printed, e.g. SELECT songId, COUNT(*) FROM plays GROUP BY songId. Requires --sql")
+                .hasArg().argName("query").build());
+
+        options.addOption(Option.builder().longOpt("start-at").desc("Where the reader starts in the stream: head, tail, or a stream cut in text form as logged by earlier runs. A job restored from a checkpoint resumes from its checkpointed positions instead. Default is head")
+                .hasArg().argName("position").build());
+        options.addOption(Option.builder().longOpt("start-time").desc("Skip plays created before this time, given as milliseconds since the epoch or as an ISO-8601 instant. Pravega can't seek by time, so the events before it are still read")
+                .hasArg().argName("time").build());
+        options.addOption(Option.builder().longOpt("batch").desc("Count plays per artist from the start position to the end position as a finite batch job, and exit")
+                .build());
+        options.addOption(Option.builder().longOpt("end-at").desc("Where the batch job stops reading: tail (as of the job start) or a stream cut. Default is tail")
+                .hasArg().argName("position").build());
+
+        options.addOption(Option.builder().longOpt("checkpoint-interval").desc("Checkpoint the reader state this often; 0 disables checkpointing. Default is " + SongPlayReader.DEFAULT_CHECKPOINT_INTERVAL)
+                .hasArg().argName("millis").build());
+        options.addOption(Option.builder().longOpt("checkpoint-mode").desc("exactly-once or at-least-once. Default is " + SongPlayReader.DEFAULT_CHECKPOINT_MODE.name().toLowerCase().replace('_', '-'))
+                .hasArg().argName("mode").build());
+        options.addOption(Option.builder().longOpt("checkpoint-timeout").desc("Time after which an unfinished checkpoint is abandoned. Default is " + SongPlayReader.DEFAULT_CHECKPOINT_TIMEOUT)
+                .hasArg().argName("millis").build());
+        options.addOption(Option.builder().longOpt("state-backend").desc("Where the reader keeps its state: heap, or rocksdb for state larger than memory with incremental checkpoints. Default is " + SongPlayReader.DEFAULT_STATE_BACKEND.name().toLowerCase())
+                .hasArg().argName("backend").build());
+        options.addOption(Option.builder().longOpt("checkpoint-dir").desc("Directory URI checkpoints are written to. Default is " + SongPlayReader.DEFAULT_CHECKPOINT_DIR)
+                .hasArg().argName("uri").build());
+
+        options.addOption(Option.builder().longOpt("source-parallelism").desc("Number of Pravega reader subtasks. More than the stream has segments leaves some idle. Default is the environment's parallelism")
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("parse-parallelism").desc("Number of subtasks decoding and filtering events, and pre-aggregating or mapping them to artists. Default is the environment's parallelism")
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("aggregate-parallelism").desc("Number of subtasks of the keyed per-artist counts. Default is the environment's parallelism")
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("sink-parallelism").desc("Number of Elasticsearch (and print) sink subtasks. Default is the environment's parallelism")
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("max-parallelism").desc("Number of key groups of the keyed state, the limit to rescaling the aggregation. A job can't be restored from a checkpoint taken with a different value. Default is Flink's")
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("disable-chaining").desc("Run every operator of the reader as its own task, e.g. to profile the stages separately")
+                .build());
+        options.addOption(Option.builder().longOpt("disable-object-reuse").desc("Copy records between chained operators of the reader, e.g. to measure what object reuse saves")
+                .build());
+        options.addOption(Option.builder().longOpt("print").desc("Also print every result the reader writes to stderr")
+                .build());
+        options.addOption(Option.builder().longOpt("query-port").desc("Serve the reader's current counts and top N as JSON at http://<host>:<port>/top and /artists. Disabled unless set")
+                .hasArg().argName("port").build());
+        options.addOption(Option.builder().longOpt("disable-elasticsearch").desc("Do not write the reader's results to Elastic Search, e.g. when they are read from --query-port")
+                .build());
+
+        options.addOption(Option.builder().longOpt("metrics-reporter").desc("Export the reader's Flink metrics when it runs in a local environment: jmx or prometheus. On a cluster, reporters are configured in flink-conf.yaml")
+                .hasArg().argName("reporter").build());
+        options.addOption(Option.builder().longOpt("metrics-port").desc("Port of the Prometheus metrics endpoint. The generator serves none unless this is set; the reader's prometheus reporter defaults to " + SongPlayReader.DEFAULT_PROMETHEUS_PORT)
+                .hasArg().argName("port").build());
+        options.addOption(Option.builder().longOpt("metrics-interval").desc("Time between the generator's metrics summaries in the log. Default is " + SongPlayGenerator.DEFAULT_METRICS_INTERVAL)
+                .hasArg().argName("seconds").build());
+
         options.addOption(Option.builder().longOpt("min-xput").desc("Minimum throughput (events per second) to write. Throughput will vary randomly between min and max. Default is " + SongPlayGenerator.DEFAULT_MIN_XPUT)
                 .hasArg().argName("events-per-second").build());
         options.addOption(Option.builder().longOpt("max-xput").desc("Maximum throughput (events per second) to write. Throughput will vary randomly between min and max. Default is " + SongPlayGenerator.DEFAULT_MAX_XPUT)
                 .hasArg().argName("events-per-second").build());
-        options.addOption(Option.builder().longOpt("xput-interval").desc("Time in seconds between changes to the throughput rate. Throughput will remain constant for this duration. Default is " + SongPlayGenerator.DEFAULT_XPUT_INTERVAL)
+        options.addOption(Option.builder().longOpt("xput-interval").desc("Time in seconds between changes to the throughput rate. Throughput will remain constant for this duration. For the ramp, step and sine profiles this is the ramp duration, step duration and period. Default is " + SongPlayGenerator.DEFAULT_XPUT_INTERVAL)
                 .hasArg().argName("seconds").build());
+        options.addOption(Option.builder().longOpt("rate-profile").desc("How throughput varies between min and max: random, ramp, step or sine. Default is " + SongPlayGenerator.DEFAULT_RATE_PROFILE.name().toLowerCase())
+                .hasArg().argName("profile").build());
+        options.addOption(Option.builder().longOpt("xput-steps").desc("Number of steps from min to max throughput for the step profile. Default is " + SongPlayGenerator.DEFAULT_XPUT_STEPS)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("burst").desc("Number of events the rate limiter may write back-to-back to catch up or after being idle. Default is " + SongPlayGenerator.DEFAULT_BURST_SECONDS + " seconds worth of the current throughput")
+                .hasArg().argName("events").build());
+        options.addOption(Option.builder().longOpt("threads").desc("Number of producer threads. The throughput is split evenly across them. Default is " + SongPlayGenerator.DEFAULT_THREADS)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("max-in-flight").desc("Maximum number of events written but not yet acknowledged, split across the producer threads. Writing waits when it is reached. Default is " + SongPlayGenerator.DEFAULT_MAX_IN_FLIGHT)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("write-retries").desc("Number of times a failed write is retried before the event is dropped. Default is " + SongPlayGenerator.DEFAULT_WRITE_RETRIES)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("transactional").desc("Write events in transactions, committed by size or age, instead of one by one")
+                .build());
+        options.addOption(Option.builder().longOpt("txn-events").desc("Number of events after which a transaction is committed. Default is " + SongPlayGenerator.DEFAULT_TXN_EVENTS)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("txn-millis").desc("Time in milliseconds after which an open transaction is committed. Default is " + SongPlayGenerator.DEFAULT_TXN_MILLIS)
+                .hasArg().argName("milliseconds").build());
+        options.addOption(Option.builder().longOpt("max-open-txns").desc("Maximum number of transactions open or committing at once, shared by the producer threads. Default is " + SongPlayGenerator.DEFAULT_MAX_OPEN_TXNS)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("scopes").desc("Number of scopes to write to, named by --name-pattern from the scope name when more than one. Default is " + SongPlayGenerator.DEFAULT_SCOPES)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("streams").desc("Number of streams to write to in each scope, named by --name-pattern from the stream name when more than one. Default is " + SongPlayGenerator.DEFAULT_STREAMS)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("name-pattern").desc("Format of the scope and stream names from the configured name and a 1-based index. Default is " + SongPlayGenerator.DEFAULT_NAME_PATTERN)
+                .hasArg().argName("pattern").build());
+        options.addOption(Option.builder().longOpt("scaling").desc("Scaling policy of the streams the generator creates: fixed, event-rate or data-rate. Existing streams are not changed. Default is " + SongPlayGenerator.DEFAULT_SCALING.name().toLowerCase().replace('_', '-'))
+                .hasArg().argName("policy").build());
+        options.addOption(Option.builder().longOpt("scaling-target").desc("Target rate of each segment: events per second for event-rate, KB per second for data-rate. Default is " + SongPlayGenerator.DEFAULT_SCALING_TARGET)
+                .hasArg().argName("rate").build());
+        options.addOption(Option.builder().longOpt("scale-factor").desc("Number of segments a segment splits into when it scales up. Default is " + SongPlayGenerator.DEFAULT_SCALE_FACTOR)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("min-segments").desc("Minimum number of segments of each stream, and the number of segments of fixed streams. Default is " + SongPlayGenerator.DEFAULT_MIN_SEGMENTS)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("routing").desc("How events are spread over streams and segments: player (keeps each player's plays in order) or random (even load). Default is " + SongPlayGenerator.DEFAULT_ROUTING.name().toLowerCase())
+                .hasArg().argName("routing").build());
+        options.addOption(Option.builder().longOpt("event-format").desc("Format of the events written: json or binary. The reader detects the format of each event. Default is " + SongPlayGenerator.DEFAULT_EVENT_FORMAT.name().toLowerCase())
+                .hasArg().argName("format").build());
+        options.addOption(Option.builder().longOpt("players").desc("Number of distinct player IDs (1 to count). Default is " + SongPlayGenerator.DEFAULT_PLAYERS)
+                .hasArg().argName("count").build());
+        options.addOption(Option.builder().longOpt("song-distribution").desc("Popularity of songs: uniform, zipf:<exponent> or hotset:<hot-fraction>:<hot-percent> (e.g. hotset:0.1:90 plays the first 10% of songs 90% of the time). Default is " + SongPlayGenerator.DEFAULT_DISTRIBUTION)
+                .hasArg().argName("distribution").build());
+        options.addOption(Option.builder().longOpt("player-distribution").desc("Activity of players, in the same form as --song-distribution. Default is " + SongPlayGenerator.DEFAULT_DISTRIBUTION)
+                .hasArg().argName("distribution").build());
         options.addOption(Option.builder("h").longOpt("help").desc("Print this help text").build());
         return options;
     }
@@ -43,16 +190,64 @@ public class SongPlayGeneratorCli {
         SongPlayGenerator.Config config = new SongPlayGenerator.Config();
 
         if (commandLine.hasOption("min-xput"))
-            config.setMinXput(Integer.parseInt(commandLine.getOptionValue("min-xput")));
+            config.setMinXput(Double.parseDouble(commandLine.getOptionValue("min-xput")));
         if (commandLine.hasOption("max-xput"))
-            config.setMaxXput(Integer.parseInt(commandLine.getOptionValue("max-xput")));
+            config.setMaxXput(Double.parseDouble(commandLine.getOptionValue("max-xput")));
         if (commandLine.hasOption("xput-interval"))
             config.setXputInterval(Integer.parseInt(commandLine.getOptionValue("xput-interval")));
+        if (commandLine.hasOption("rate-profile"))
+            config.setRateProfile(RateProfile.Type.valueOf(commandLine.getOptionValue("rate-profile").toUpperCase()));
+        if (commandLine.hasOption("xput-steps"))
+            config.setXputSteps(Integer.parseInt(commandLine.getOptionValue("xput-steps")));
+        if (commandLine.hasOption("burst"))
+            config.setBurst(Double.parseDouble(commandLine.getOptionValue("burst")));
+        if (commandLine.hasOption("threads"))
+            config.setThreads(Integer.parseInt(commandLine.getOptionValue("threads")));
+        if (commandLine.hasOption("max-in-flight"))
+            config.setMaxInFlight(Integer.parseInt(commandLine.getOptionValue("max-in-flight")));
+        if (commandLine.hasOption("write-retries"))
+            config.setWriteRetries(Integer.parseInt(commandLine.getOptionValue("write-retries")));
+        config.setTransactional(commandLine.hasOption("transactional"));
+        if (commandLine.hasOption("txn-events"))
+            config.setTxnEvents(Integer.parseInt(commandLine.getOptionValue("txn-events")));
+        if (commandLine.hasOption("txn-millis"))
+            config.setTxnMillis(Integer.parseInt(commandLine.getOptionValue("txn-millis")));
+        if (commandLine.hasOption("max-open-txns"))
+            config.setMaxOpenTxns(Integer.parseInt(commandLine.getOptionValue("max-open-txns")));
+        if (commandLine.hasOption("scopes"))
+            config.setScopes(Integer.parseInt(commandLine.getOptionValue("scopes")));
+        if (commandLine.hasOption("streams"))
+            config.setStreams(Integer.parseInt(commandLine.getOptionValue("streams")));
+        if (commandLine.hasOption("name-pattern"))
+            config.setNamePattern(commandLine.getOptionValue("name-pattern"));
+        if (commandLine.hasOption("scaling"))
+            config.setScaling(StreamScaling.valueOf(commandLine.getOptionValue("scaling").replace('-', '_').toUpperCase()));
+        if (commandLine.hasOption("scaling-target"))
+            config.setScalingTarget(Integer.parseInt(commandLine.getOptionValue("scaling-target")));
+        if (commandLine.hasOption("scale-factor"))
+            config.setScaleFactor(Integer.parseInt(commandLine.getOptionValue("scale-factor")));
+        if (commandLine.hasOption("min-segments"))
+            config.setMinSegments(Integer.parseInt(commandLine.getOptionValue("min-segments")));
+        if (commandLine.hasOption("routing"))
+            config.setRouting(SongPlayGenerator.Routing.valueOf(commandLine.getOptionValue("routing").toUpperCase()));
+        if (commandLine.hasOption("event-format"))
+            config.setEventFormat(EventFormat.valueOf(commandLine.getOptionValue("event-format").toUpperCase()));
+        if (commandLine.hasOption("players"))
+            config.setPlayers(Integer.parseInt(commandLine.getOptionValue("players")));
+        if (commandLine.hasOption("song-distribution"))
+            config.setSongDistribution(commandLine.getOptionValue("song-distribution"));
+        if (commandLine.hasOption("player-distribution"))
+            config.setPlayerDistribution(commandLine.getOptionValue("player-distribution"));
+        if (commandLine.hasOption("metrics-interval"))
+            config.setMetricsInterval(Integer.parseInt(commandLine.getOptionValue("metrics-interval")));
+        if (commandLine.hasOption("metrics-port"))
+            config.setMetricsPort(Integer.parseInt(commandLine.getOptionValue("metrics-port")));
 
         config.setControllerEndpoint(commandLine.getOptionValue('c'));
         config.setScope(commandLine.getOptionValue('x'));
         config.setStream(commandLine.getOptionValue('s'));
         config.setUseKeycloak(commandLine.hasOption('k'));
+        config.setCatalogFile(commandLine.getOptionValue("catalog"));
 
         return config;
     }
@@ -67,17 +262,108 @@ public class SongPlayGeneratorCli {
             //log.info(url.getScheme());
             config.setSchemeES(url.getScheme());
             config.setIpES(url.getHost());
-            config.setPortES(url.getPort());
+            if (url.getPort() != -1) config.setPortES(url.getPort());
+        }
+        if (commandLine.hasOption("es-bulk-actions"))
+            config.setBulkActionsES(Integer.parseInt(commandLine.getOptionValue("es-bulk-actions")));
+        if (commandLine.hasOption("es-bulk-size"))
+            config.setBulkSizeMbES(Integer.parseInt(commandLine.getOptionValue("es-bulk-size")));
+        if (commandLine.hasOption("es-flush-interval"))
+            config.setFlushIntervalES(Long.parseLong(commandLine.getOptionValue("es-flush-interval")));
+        if (commandLine.hasOption("es-backoff")) {
+            String backoff = commandLine.getOptionValue("es-backoff");
+            config.setBackoffTypeES("none".equalsIgnoreCase(backoff) ? null : FlushBackoffType.valueOf(backoff.toUpperCase()));
         }
+        if (commandLine.hasOption("es-backoff-delay"))
+            config.setBackoffDelayES(Long.parseLong(commandLine.getOptionValue("es-backoff-delay")));
+        if (commandLine.hasOption("es-backoff-retries"))
+            config.setBackoffRetriesES(Integer.parseInt(commandLine.getOptionValue("es-backoff-retries")));
+        if (commandLine.hasOption("window"))
+            config.setWindowType(SongPlayReader.WindowType.valueOf(commandLine.getOptionValue("window").toUpperCase()));
+        if (commandLine.hasOption("window-size"))
+            config.setWindowSize(Long.parseLong(commandLine.getOptionValue("window-size")));
+        if (commandLine.hasOption("window-slide"))
+            config.setWindowSlide(Long.parseLong(commandLine.getOptionValue("window-slide")));
+        if (commandLine.hasOption("top-n"))
+            config.setTopN(Integer.parseInt(commandLine.getOptionValue("top-n")));
+        config.setHeavyHitters(commandLine.hasOption("heavy-hitters"));
+        if (commandLine.hasOption("sketch-width"))
+            config.setSketchWidth(Integer.parseInt(commandLine.getOptionValue("sketch-width")));
+        if (commandLine.hasOption("sketch-depth"))
+            config.setSketchDepth(Integer.parseInt(commandLine.getOptionValue("sketch-depth")));
+        config.setEventTime(commandLine.hasOption("event-time"));
+        if (commandLine.hasOption("max-out-of-orderness"))
+            config.setMaxOutOfOrderness(Long.parseLong(commandLine.getOptionValue("max-out-of-orderness")));
+        if (commandLine.hasOption("allowed-lateness"))
+            config.setAllowedLateness(Long.parseLong(commandLine.getOptionValue("allowed-lateness")));
+        config.setPreAggregate(commandLine.hasOption("pre-aggregate"));
+        if (commandLine.hasOption("pre-aggregate-events"))
+            config.setPreAggregateEvents(Integer.parseInt(commandLine.getOptionValue("pre-aggregate-events")));
+        if (commandLine.hasOption("pre-aggregate-millis"))
+            config.setPreAggregateMillis(Long.parseLong(commandLine.getOptionValue("pre-aggregate-millis")));
+        if (commandLine.hasOption("pre-aggregate-keys"))
+            config.setPreAggregateKeys(Integer.parseInt(commandLine.getOptionValue("pre-aggregate-keys")));
+
+        config.setSql(commandLine.hasOption("sql"));
+        if (commandLine.hasOption("sql-query"))
+            config.setSqlQuery(commandLine.getOptionValue("sql-query"));
+        if (commandLine.hasOption("start-at"))
+            config.setStartAt(commandLine.getOptionValue("start-at"));
+        if (commandLine.hasOption("start-time"))
+            config.setStartTime(parseTime(commandLine.getOptionValue("start-time")));
+        config.setBatch(commandLine.hasOption("batch"));
+        if (commandLine.hasOption("end-at"))
+            config.setEndAt(commandLine.getOptionValue("end-at"));
+
+        if (commandLine.hasOption("checkpoint-interval"))
+            config.setCheckpointInterval(Long.parseLong(commandLine.getOptionValue("checkpoint-interval")));
+        if (commandLine.hasOption("checkpoint-mode"))
+            config.setCheckpointMode(CheckpointingMode.valueOf(commandLine.getOptionValue("checkpoint-mode").replace('-', '_').toUpperCase()));
+        if (commandLine.hasOption("checkpoint-timeout"))
+            config.setCheckpointTimeout(Long.parseLong(commandLine.getOptionValue("checkpoint-timeout")));
+        if (commandLine.hasOption("state-backend"))
+            config.setStateBackend(SongPlayReader.StateBackendType.valueOf(commandLine.getOptionValue("state-backend").toUpperCase()));
+        if (commandLine.hasOption("checkpoint-dir"))
+            config.setCheckpointDir(commandLine.getOptionValue("checkpoint-dir"));
+        if (commandLine.hasOption("source-parallelism"))
+            config.setSourceParallelism(Integer.parseInt(commandLine.getOptionValue("source-parallelism")));
+        if (commandLine.hasOption("parse-parallelism"))
+            config.setParseParallelism(Integer.parseInt(commandLine.getOptionValue("parse-parallelism")));
+        if (commandLine.hasOption("aggregate-parallelism"))
+            config.setAggregateParallelism(Integer.parseInt(commandLine.getOptionValue("aggregate-parallelism")));
+        if (commandLine.hasOption("sink-parallelism"))
+            config.setSinkParallelism(Integer.parseInt(commandLine.getOptionValue("sink-parallelism")));
+        if (commandLine.hasOption("max-parallelism"))
+            config.setMaxParallelism(Integer.parseInt(commandLine.getOptionValue("max-parallelism")));
+        config.setChaining(!commandLine.hasOption("disable-chaining"));
+        config.setPrint(commandLine.hasOption("print"));
+        config.setElasticsearch(!commandLine.hasOption("disable-elasticsearch"));
+        if (commandLine.hasOption("query-port"))
+            config.setQueryPort(Integer.parseInt(commandLine.getOptionValue("query-port")));
+        config.setObjectReuse(!commandLine.hasOption("disable-object-reuse"));
+        if (commandLine.hasOption("metrics-reporter"))
+            config.setMetricsReporter(SongPlayReader.MetricsReporter.valueOf(commandLine.getOptionValue("metrics-reporter").toUpperCase()));
+        if (commandLine.hasOption("metrics-port"))
+            config.setMetricsPort(Integer.parseInt(commandLine.getOptionValue("metrics-port")));
 
         config.setControllerEndpoint(commandLine.getOptionValue('c'));
         config.setScope(commandLine.getOptionValue('x'));
         config.setStream(commandLine.getOptionValue('s'));
         config.setUseKeycloak(commandLine.hasOption('k'));
+        config.setCatalogFile(commandLine.getOptionValue("catalog"));
 
         return config;
     }
 
+    // milliseconds since the epoch, or an ISO-8601 instant such as 2019-06-01T12:00:00Z
+    static long parseTime(String time) {
+        try {
+            return time.chars().allMatch(Character::isDigit) ? Long.parseLong(time) : Instant.parse(time).toEpochMilli();
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("invalid time " + time, e);
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         if (args.length == 0) {
             HelpFormatter hf = new HelpFormatter();
@@ -12,37 +12,86 @@ package com.dellemc.desdp.demo;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.pravega.client.ClientConfig;
+import io.pravega.client.stream.Stream;
+import io.pravega.client.stream.StreamCut;
+import io.pravega.connectors.flink.FlinkPravegaInputFormat;
 import io.pravega.connectors.flink.FlinkPravegaReader;
 import io.pravega.connectors.flink.PravegaConfig;
 import org.apache.commons.validator.routines.InetAddressValidator;
+import org.apache.flink.api.common.ExecutionConfig;
+import org.apache.flink.api.common.JobExecutionResult;
+import org.apache.flink.api.common.accumulators.IntCounter;
+import org.apache.flink.api.common.functions.AggregateFunction;
+import org.apache.flink.api.common.functions.FilterFunction;
 import org.apache.flink.api.common.functions.FlatMapFunction;
 import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.common.functions.RichFilterFunction;
 import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.DataSet;
+import org.apache.flink.api.java.ExecutionEnvironment;
+import org.apache.flink.api.java.functions.KeySelector;
+import org.apache.flink.api.java.io.PrintingOutputFormat;
+import org.apache.flink.api.java.operators.AggregateOperator;
+import org.apache.flink.api.java.operators.DataSink;
+import org.apache.flink.api.java.operators.DataSource;
+import org.apache.flink.api.java.operators.FilterOperator;
+import org.apache.flink.api.java.operators.FlatMapOperator;
+import org.apache.flink.api.java.operators.MapOperator;
 import org.apache.flink.api.java.tuple.Tuple2;
 import org.apache.flink.api.java.tuple.Tuple3;
 import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.contrib.streaming.state.RocksDBStateBackend;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.runtime.state.filesystem.FsStateBackend;
+import org.apache.flink.streaming.api.CheckpointingMode;
+import org.apache.flink.streaming.api.TimeCharacteristic;
+import org.apache.flink.streaming.api.datastream.DataStreamSink;
+import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
+import org.apache.flink.streaming.api.environment.CheckpointConfig;
+import org.apache.flink.streaming.api.environment.LocalStreamEnvironment;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.ProcessFunction;
+import org.apache.flink.streaming.api.functions.sink.SinkFunction;
+import org.apache.flink.streaming.api.functions.timestamps.BoundedOutOfOrdernessTimestampExtractor;
+import org.apache.flink.streaming.api.functions.windowing.ProcessWindowFunction;
+import org.apache.flink.streaming.api.windowing.assigners.SlidingEventTimeWindows;
+import org.apache.flink.streaming.api.windowing.assigners.SlidingProcessingTimeWindows;
+import org.apache.flink.streaming.api.windowing.assigners.TumblingEventTimeWindows;
+import org.apache.flink.streaming.api.windowing.assigners.WindowAssigner;
+import org.apache.flink.streaming.api.windowing.assigners.TumblingProcessingTimeWindows;
+import org.apache.flink.streaming.api.windowing.time.Time;
+import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
+import org.apache.flink.streaming.connectors.elasticsearch.ElasticsearchSinkBase.FlushBackoffType;
 import org.apache.flink.streaming.connectors.elasticsearch.ElasticsearchSinkFunction;
 import org.apache.flink.streaming.connectors.elasticsearch.RequestIndexer;
+import org.apache.flink.streaming.connectors.elasticsearch.util.RetryRejectedExecutionFailureHandler;
 import org.apache.flink.streaming.connectors.elasticsearch6.ElasticsearchSink;
 import org.apache.flink.util.Collector;
+import org.apache.flink.util.OutputTag;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
-import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.client.Requests;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.RestClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /*
@@ -54,6 +103,53 @@ public class SongPlayReader {
     public static final String ELASTIC_SEARCH_IP = "127.0.0.1";
     public static final int ELASTIC_SEARCH_PORT = 9200;
     public static final String ELASTIC_SEARCH_SCHEME = "http";
+    public static final String ELASTIC_SEARCH_INDEX = "music-demo";
+    public static final String ELASTIC_SEARCH_TYPE = "top-artist";
+    // Elasticsearch 6 allows one mapping per index, so the ranking gets its own index
+    public static final String ELASTIC_SEARCH_TOP_INDEX = "music-demo-top";
+    public static final String ELASTIC_SEARCH_TOP_SONGS_INDEX = "music-demo-top-songs";
+    public static final int DEFAULT_BULK_ACTIONS_ES = 1000;
+    public static final int DEFAULT_BULK_SIZE_MB_ES = 5;
+    public static final long DEFAULT_FLUSH_INTERVAL_ES = 1000; // ms
+    public static final FlushBackoffType DEFAULT_BACKOFF_TYPE_ES = FlushBackoffType.EXPONENTIAL;
+    public static final long DEFAULT_BACKOFF_DELAY_ES = 100; // ms
+    public static final int DEFAULT_BACKOFF_RETRIES_ES = 8;
+    public static final long DEFAULT_WINDOW_SIZE = 60; // seconds
+    public static final long DEFAULT_WINDOW_SLIDE = 10; // seconds
+    public static final int DEFAULT_TOP_N = 10;
+    public static final int DEFAULT_SKETCH_WIDTH = CountMinSketch.DEFAULT_WIDTH;
+    public static final int DEFAULT_SKETCH_DEPTH = CountMinSketch.DEFAULT_DEPTH;
+    // heavy-hitter candidates each aggregation subtask keeps per rank written
+    static final int CANDIDATES_PER_RANK = 4;
+    public static final long DEFAULT_MAX_OUT_OF_ORDERNESS = 5000; // ms
+    public static final long DEFAULT_ALLOWED_LATENESS = 0; // ms
+    public static final int DEFAULT_PRE_AGGREGATE_EVENTS = 10000;
+    public static final long DEFAULT_PRE_AGGREGATE_MILLIS = 500;
+    public static final int DEFAULT_PRE_AGGREGATE_KEYS = 10000;
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 0; // ms, 0 disables checkpointing
+    public static final CheckpointingMode DEFAULT_CHECKPOINT_MODE = CheckpointingMode.EXACTLY_ONCE;
+    public static final long DEFAULT_CHECKPOINT_TIMEOUT = 60000; // ms
+    public static final StateBackendType DEFAULT_STATE_BACKEND = StateBackendType.HEAP;
+    public static final String DEFAULT_CHECKPOINT_DIR = "file:///tmp/music-demo-checkpoints";
+    public static final int DEFAULT_PROMETHEUS_PORT = 9249;
+
+    enum WindowType {
+        TUMBLING, SLIDING
+    }
+
+    enum StateBackendType {
+        HEAP, ROCKSDB
+    }
+
+    enum MetricsReporter {
+        JMX, PROMETHEUS
+    }
+
+    static final OutputTag<String> MALFORMED_EVENTS = new OutputTag<String>("malformed-events") {};
+    static final OutputTag<PlayEvent> LATE_EVENTS = new OutputTag<PlayEvent>("late-events") {};
+    static final String MALFORMED_EVENTS_ACCUMULATOR = "malformedEvents";
+
+    private static final String REQUEST_START = "music-demo.request-start";
 
     // Logger initialization
 
@@ -69,83 +165,15 @@ public class SongPlayReader {
 
         //running.set(true);
 
-        PravegaConfig pravegaConfig = PravegaConfig.fromDefaults()
-                .withControllerURI(URI.create(config.getControllerEndpoint()))
-                .withDefaultScope(config.getScope())
-                .withHostnameValidation(false);
-
         try {
 
-            StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
-
-            // create the Pravega source to read a stream of text
-            FlinkPravegaReader<String> flinkPravegaReader = FlinkPravegaReader.<String>builder()
-                    .withPravegaConfig(pravegaConfig)
-                    .forStream(config.getStream())
-                    .withDeserializationSchema(new UTF8StringDeserializationSchema())
-                    .build();
-
-            /*DataStream<String> events = env
-                    .addSource(flinkPravegaReader)
-                    .name("events");*/
-
-            //DataStream<Tuple2<String, Integer>> events = env
-            DataStream<Tuple2<String, Integer>> events = env
-                    .addSource(flinkPravegaReader)
-                    .name(config.getStream())
-                    .map(new RowSplitter())
-                    .flatMap(new ArtistCount())
-                    .keyBy(0)
-                    .sum(1);
-                    //.flatMap(new Result());
-
-            // create an output sink to print to stdout for verification
-            events.printToErr();
-
-            List<HttpHost> httpHosts = new ArrayList<>();
-            httpHosts.add(new HttpHost("10.247.191.240", 9200, "http"));
-
-
-            // use a ElasticsearchSink.Builder to create an ElasticsearchSink
-            ElasticsearchSink.Builder<Tuple2<String, Integer>> esSinkBuilder = new ElasticsearchSink.Builder<Tuple2<String, Integer>>(
-                    httpHosts,
-                    new ElasticsearchSinkFunction<Tuple2<String, Integer>>() {
-                        public IndexRequest createIndexRequest(Tuple2<String, Integer> element) {
-                            Map<String, String> json = new HashMap<>();
-                            json.put("artist", element.f0);
-                            json.put("count", element.f1.toString());
-                            return Requests.indexRequest()
-                                    .index("music-demo")
-                                    .type("top-artist")
-                                    .source(json);
-                        }
-
-                        @Override
-                        public void process(Tuple2<String, Integer> element, RuntimeContext ctx, RequestIndexer indexer) {
-                            indexer.add(createIndexRequest(element));
-                        }
-                    }
-            );
-            esSinkBuilder.setBulkFlushMaxActions(1);
-            esSinkBuilder.setRestClientFactory(
-                    restClientBuilder -> {
-                        restClientBuilder.setHttpClientConfigCallback(new RestClientBuilder.HttpClientConfigCallback() {
-                            @Override
-                            public HttpAsyncClientBuilder customizeHttpClient(HttpAsyncClientBuilder httpClientBuilder) {
-
-                                // elasticsearch username and password
-                                CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-                                credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials("elastic", "secret"));
-
-                                return httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider);
-                            }
-                        });
-                    }
-            );
-
+            if (config.isBatch()) {
+                runBatch(config);
+                return;
+            }
 
-            //ElasticsearchSink<String> elasticSink = newElasticSearchSink();
-            events.addSink(esSinkBuilder.build());  //.name("Write to ElasticSearch")
+            StreamExecutionEnvironment env = createExecutionEnvironment(config);
+            buildPipeline(env, config, new ElasticsearchSinks());
 
             // execute within the Flink environment
             env.execute("JSON Reader");
@@ -158,13 +186,665 @@ public class SongPlayReader {
 
     }
 
+    /**
+     * Recomputes the play count of every artist from the events between two positions of the stream as a finite job,
+     * which reads all segments in parallel and terminates at the end position.
+     */
+    static void runBatch(Config config) throws Exception {
+        ExecutionEnvironment env = ExecutionEnvironment.getExecutionEnvironment();
+        configureTypes(env.getConfig(), config);
+        buildBatchPipeline(env, config);
+        JobExecutionResult result = env.execute("JSON Reader (batch)");
+        Integer malformedEvents = result.getAccumulatorResult(MALFORMED_EVENTS_ACCUMULATOR);
+        if (malformedEvents != null && malformedEvents > 0) log.warn("skipped {} malformed events", malformedEvents);
+        log.info("########## JSON READER BATCH END #############");
+    }
+
+    /**
+     * Every type the reader passes between operators or keeps in state has a Flink serializer (play events their own
+     * {@link PlayEventSerializer}), so generic types are disabled: a type that would fall back to Kryo fails the job
+     * when it is built. With object reuse, chained operators hand records on without copying them, so a function that
+     * keeps an input copies it first (as {@link TopArtists} does with the counts it ranks), and one that reuses its
+     * output only does so where the next operator serializes the record before it changes again.
+     */
+    static void configureTypes(ExecutionConfig executionConfig, Config config) {
+        executionConfig.disableGenericTypes();
+        if (config.isObjectReuse()) executionConfig.enableObjectReuse();
+    }
+
+    static PravegaConfig createPravegaConfig(Config config) {
+        return PravegaConfig.fromDefaults()
+                .withControllerURI(URI.create(config.getControllerEndpoint()))
+                .withDefaultScope(config.getScope())
+                .withHostnameValidation(false);
+    }
+
+    /**
+     * Where the reader writes its results: Elasticsearch when it runs as the demo, a stand-in in the benchmark harness.
+     * They can be turned off when the results are only read from the {@link QueryService}.
+     */
+    interface ResultSinks {
+
+        SinkFunction<Tuple2<Integer, Integer>> runningCounts(Config config, Catalog catalog);
+
+        SinkFunction<ArtistWindowCount> topArtists(Config config, Catalog catalog);
+
+        SinkFunction<SongWindowCount> topSongs(Config config, Catalog catalog);
+    }
+
+    static class ElasticsearchSinks implements ResultSinks {
+
+        @Override
+        public SinkFunction<Tuple2<Integer, Integer>> runningCounts(Config config, Catalog catalog) {
+            return createElasticsearchSink(config, new ArtistCountSinkFunction(catalog));
+        }
+
+        @Override
+        public SinkFunction<ArtistWindowCount> topArtists(Config config, Catalog catalog) {
+            return createElasticsearchSink(config, new TopArtistSinkFunction(catalog));
+        }
+
+        @Override
+        public SinkFunction<SongWindowCount> topSongs(Config config, Catalog catalog) {
+            return createElasticsearchSink(config, new TopSongSinkFunction(catalog));
+        }
+    }
+
+    /**
+     * Adds the reader job to {@code env}: the Pravega source, parsing, and the running count, top-N or heavy-hitter
+     * aggregation, with its results written to {@code sinks}.
+     */
+    static void buildPipeline(StreamExecutionEnvironment env, Config config, ResultSinks sinks) throws IOException {
+        PravegaConfig pravegaConfig = createPravegaConfig(config);
+
+        if (config.isEventTime()) env.setStreamTimeCharacteristic(TimeCharacteristic.EventTime);
+        if (config.getCheckpointInterval() > 0) configureCheckpointing(env, config);
+        if (config.getMaxParallelism() > 0) env.setMaxParallelism(config.getMaxParallelism());
+        if (!config.isChaining()) env.disableOperatorChaining();
+        configureTypes(env.getConfig(), config);
+
+        // songs and artists travel through the job as catalog IDs; names are only looked up for output
+        Catalog catalog = Catalog.load(config.getCatalogFile());
+
+        // create the Pravega source to read a stream of play events; when checkpointing is enabled each Flink
+        // checkpoint also checkpoints the reader group, so the positions in the stream are restored with the state
+        // and the start position only applies to a fresh start
+        Stream stream = Stream.of(config.getScope(), config.getStream());
+        StreamCut start = Utils.streamCut(Utils.createClientConfig(config), stream,
+                config.getStartAt() != null ? config.getStartAt() : Utils.HEAD);
+        if (config.getStartAt() != null) log.info("reading {} from {}", stream.getScopedName(), describe(start));
+        FlinkPravegaReader<PlayEvent> flinkPravegaReader = FlinkPravegaReader.<PlayEvent>builder()
+                .withPravegaConfig(pravegaConfig)
+                .forStream(stream, start)
+                .withDeserializationSchema(new PlayEventDeserializationSchema(catalog))
+                .withCheckpointInitiateTimeout(checkpointInitiateTimeout(config))
+                .build();
+
+        /*DataStream<String> events = env
+                .addSource(flinkPravegaReader)
+                .name("events");*/
+
+        // each source subtask reads a share of the segments, so more source subtasks than segments stay idle
+        DataStream<PlayEvent> events = withParallelism(env
+                .addSource(flinkPravegaReader)
+                .name(config.getStream())
+                .uid("pravega-source"), config.getSourceParallelism());
+
+        SingleOutputStreamOperator<PlayEvent> plays = withParallelism(events
+                .process(new PlayEventFilter())
+                .name("parse"), config.getParseParallelism());
+
+        // records that could not be decoded are logged instead of failing the job
+        plays.getSideOutput(MALFORMED_EVENTS)
+                .addSink(new MalformedEventLogger())
+                .name("malformed-events");
+
+        DataStream<PlayEvent> timedPlays = plays;
+        if (config.getStartTime() > 0) {
+            timedPlays = withParallelism(timedPlays
+                    .filter(new PlaysSince(config.getStartTime()))
+                    .name("start-time"), config.getParseParallelism());
+        }
+        if (config.isEventTime()) {
+            // in the parse stage, so each parse subtask tracks the watermark of the events it sees; with the source's
+            // parallelism these are the events of the segments one source subtask reads
+            timedPlays = withParallelism(timedPlays
+                    .assignTimestampsAndWatermarks(new PlayTimestampExtractor(config.getMaxOutOfOrderness()))
+                    .name("timestamps"), config.getParseParallelism());
+        }
+
+        if (config.isHeavyHitters()) addHeavyHitters(timedPlays, config, catalog, sinks);
+        else if (config.isSql()) SqlPipeline.addAggregations(timedPlays, config, catalog, sinks);
+        else if (config.getWindowType() != null) addTopArtists(timedPlays, config, catalog, sinks);
+        else addRunningCounts(timedPlays, config, catalog, sinks);
+    }
+
+    // 0 leaves the environment's default parallelism
+    static <T> SingleOutputStreamOperator<T> withParallelism(SingleOutputStreamOperator<T> operator, int parallelism) {
+        return parallelism > 0 ? operator.setParallelism(parallelism) : operator;
+    }
+
+    static <T> DataStreamSink<T> withParallelism(DataStreamSink<T> sink, int parallelism) {
+        return parallelism > 0 ? sink.setParallelism(parallelism) : sink;
+    }
+
+    /**
+     * The stream the result sinks read {@code results} from. The sinks upsert one document per artist or rank, so the
+     * updates of a key must reach them in the order they were produced. At the parallelism of the operator producing
+     * the results, each sink subtask reads one of its subtasks and sees that order; at any other sink parallelism Flink
+     * would rebalance the results round-robin, and an older update could overtake a newer one on another sink subtask,
+     * so the results are keyed by {@code key} to send each key through one sink subtask.
+     */
+    static <T> DataStream<T> toResultSinks(DataStream<T> results, KeySelector<T, Integer> key, Config config) {
+        int sinkParallelism = config.getSinkParallelism() > 0
+                ? config.getSinkParallelism() : results.getExecutionEnvironment().getParallelism();
+        return sinkParallelism == results.getParallelism() ? results : results.keyBy(key);
+    }
+
+    /**
+     * Adds the batch job to {@code env}: the events between the start and end positions (the head and the current tail
+     * by default) are counted per artist, and the totals are upserted into the same documents the streaming running
+     * counts write. Windows, pre-aggregation and checkpoints only apply to the streaming job.
+     */
+    static void buildBatchPipeline(ExecutionEnvironment env, Config config) throws IOException {
+        Catalog catalog = Catalog.load(config.getCatalogFile());
+
+        Stream stream = Stream.of(config.getScope(), config.getStream());
+        ClientConfig clientConfig = Utils.createClientConfig(config);
+        StreamCut start = Utils.streamCut(clientConfig, stream, config.getStartAt() != null ? config.getStartAt() : Utils.HEAD);
+        StreamCut end = Utils.streamCut(clientConfig, stream, config.getEndAt());
+        log.info("reading {} from {} to {}", stream.getScopedName(), describe(start), describe(end));
+
+        // the input format reads each segment between the stream cuts as one split, so all segments are read in parallel
+        FlinkPravegaInputFormat<PlayEvent> inputFormat = FlinkPravegaInputFormat.<PlayEvent>builder()
+                .withPravegaConfig(createPravegaConfig(config))
+                .forStream(stream, start, end)
+                .withDeserializationSchema(new PlayEventDeserializationSchema(catalog))
+                .build();
+
+        DataSource<PlayEvent> events = env
+                .createInput(inputFormat, TypeInformation.of(PlayEvent.class))
+                .name(config.getStream());
+        if (config.getSourceParallelism() > 0) events.setParallelism(config.getSourceParallelism());
+
+        // records that could not be decoded are logged and counted instead of failing the job
+        FilterOperator<PlayEvent> validPlays = events
+                .filter(new BatchPlayEventFilter())
+                .name("parse");
+        if (config.getParseParallelism() > 0) validPlays.setParallelism(config.getParseParallelism());
+        DataSet<PlayEvent> timedPlays = validPlays;
+        if (config.getStartTime() > 0) {
+            FilterOperator<PlayEvent> playsSince = validPlays
+                    .filter(new PlaysSince(config.getStartTime()))
+                    .name("start-time");
+            if (config.getParseParallelism() > 0) playsSince.setParallelism(config.getParseParallelism());
+            timedPlays = playsSince;
+        }
+        FlatMapOperator<PlayEvent, Tuple2<Integer, Integer>> plays = timedPlays
+                .flatMap(new ArtistCount());
+        if (config.getParseParallelism() > 0) plays.setParallelism(config.getParseParallelism());
+
+        // sum() pre-aggregates before the shuffle in batch mode
+        AggregateOperator<Tuple2<Integer, Integer>> counts = plays
+                .groupBy(0)
+                .sum(1);
+        if (config.getAggregateParallelism() > 0) counts.setParallelism(config.getAggregateParallelism());
+
+        // print() would execute the plan on its own, so printing is an output of the same job
+        if (config.isPrint()) {
+            MapOperator<Tuple2<Integer, Integer>, Tuple2<String, Integer>> names = counts.map(new ArtistName(catalog));
+            DataSink<Tuple2<String, Integer>> print = names.output(new PrintingOutputFormat<>(true));
+            if (config.getSinkParallelism() > 0) {
+                names.setParallelism(config.getSinkParallelism());
+                print.setParallelism(config.getSinkParallelism());
+            }
+        }
+
+        if (config.isElasticsearch()) {
+            DataSink<Tuple2<Integer, Integer>> sink = counts
+                    .output(new ElasticsearchOutputFormat<>(new HttpHost(config.getIpES(), config.getPortES(), config.getSchemeES()),
+                            config.getBulkActionsES(), new ArtistCountSinkFunction(catalog)))
+                    .name("Write artist counts");
+            if (config.getSinkParallelism() > 0) sink.setParallelism(config.getSinkParallelism());
+        }
+    }
+
+    // the text form can be passed back as a start or end position; head is a stream cut without one
+    private static String describe(StreamCut streamCut) {
+        return streamCut == StreamCut.UNBOUNDED ? Utils.HEAD : streamCut.asText();
+    }
+
+    /**
+     * The environment the job was submitted to. A local environment (the reader run straight from the jar) is
+     * recreated with the requested metrics reporter; on a cluster, reporters come from flink-conf.yaml.
+     */
+    static StreamExecutionEnvironment createExecutionEnvironment(Config config) {
+        StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
+        if (config.getMetricsReporter() == null) return env;
+        if (!(env instanceof LocalStreamEnvironment)) {
+            log.warn("ignoring metrics reporter {}: configure reporters in flink-conf.yaml when running on a cluster",
+                    config.getMetricsReporter());
+            return env;
+        }
+
+        Configuration configuration = new Configuration();
+        if (config.getMetricsReporter() == MetricsReporter.JMX) {
+            configuration.setString("metrics.reporter.jmx.class", "org.apache.flink.metrics.jmx.JMXReporter");
+        } else {
+            configuration.setString("metrics.reporter.prom.class", "org.apache.flink.metrics.prometheus.PrometheusReporter");
+            configuration.setString("metrics.reporter.prom.port", Integer.toString(
+                    config.getMetricsPort() > 0 ? config.getMetricsPort() : DEFAULT_PROMETHEUS_PORT));
+        }
+        return StreamExecutionEnvironment.createLocalEnvironment(env.getParallelism(), configuration);
+    }
+
+    /**
+     * Enables periodic checkpoints of all operator state. With the RocksDB backend, keyed state lives on local disk
+     * instead of the heap, and checkpoints are incremental: only the files written since the last checkpoint are
+     * copied. Checkpoints are kept when the job is cancelled, so it can be resumed from the latest one.
+     */
+    static void configureCheckpointing(StreamExecutionEnvironment env, Config config) throws IOException {
+        env.enableCheckpointing(config.getCheckpointInterval(), config.getCheckpointMode());
+        CheckpointConfig checkpointConfig = env.getCheckpointConfig();
+        checkpointConfig.setCheckpointTimeout(config.getCheckpointTimeout());
+        checkpointConfig.enableExternalizedCheckpoints(CheckpointConfig.ExternalizedCheckpointCleanup.RETAIN_ON_CANCELLATION);
+
+        if (config.getStateBackend() == StateBackendType.ROCKSDB) {
+            env.setStateBackend(new RocksDBStateBackend(config.getCheckpointDir(), true));
+        } else {
+            env.setStateBackend(new FsStateBackend(config.getCheckpointDir()));
+        }
+        log.info("checkpointing every {} ms ({}) to {} with the {} state backend", config.getCheckpointInterval(),
+                config.getCheckpointMode(), config.getCheckpointDir(), config.getStateBackend());
+    }
+
+    /**
+     * How long the Pravega reader waits for its reader group checkpoint: the Flink checkpoint timeout, as the
+     * {@code Time} of Flink's common API the connector takes rather than the windowing {@code Time} used elsewhere here.
+     */
+    private static org.apache.flink.api.common.time.Time checkpointInitiateTimeout(Config config) {
+        return org.apache.flink.api.common.time.Time.milliseconds(config.getCheckpointTimeout());
+    }
+
+    /**
+     * Running play count per artist, updated (and written out) for every event, or for every partial sum when plays are
+     * pre-aggregated.
+     */
+    static void addRunningCounts(DataStream<PlayEvent> plays, Config config, Catalog catalog, ResultSinks sinks) {
+        DataStream<Tuple2<Integer, Integer>> artistCounts = withParallelism(config.isPreAggregate()
+                ? plays.transform("pre-aggregate", LocalArtistCombiner.TYPE, new LocalArtistCombiner(
+                        config.getPreAggregateEvents(), config.getPreAggregateMillis(), config.getPreAggregateKeys()))
+                        .uid("pre-aggregate")
+                : plays.flatMap(new ArtistCount()), config.getParseParallelism());
+
+        //DataStream<Tuple2<String, Integer>> events = env
+        DataStream<Tuple2<Integer, Integer>> events = withParallelism(artistCounts
+                .keyBy(0)
+                .sum(1)
+                .uid("running-counts"), config.getAggregateParallelism());
+                //.flatMap(new Result());
+
+        addRunningCountSinks(events, config, catalog, sinks);
+    }
+
+    static void addRunningCountSinks(DataStream<Tuple2<Integer, Integer>> events, Config config, Catalog catalog,
+                                     ResultSinks sinks) {
+        // create an output sink to print to stdout for verification
+        if (config.isPrint()) {
+            withParallelism(withParallelism(events.map(new ArtistName(catalog)), config.getSinkParallelism())
+                    .printToErr(), config.getSinkParallelism());
+        }
+
+        if (config.isElasticsearch()) {
+            withParallelism(toResultSinks(events, new CountArtistKey(), config)
+                    .addSink(sinks.runningCounts(config, catalog))
+                    .name("Write running counts")
+                    .uid("es-running-counts"), config.getSinkParallelism());
+        }
+        if (config.getQueryPort() > 0) {
+            events.addSink(new QueryService.RunningCountSink(config.getQueryPort(), catalog, config.getTopN()))
+                    .name("Query running counts")
+                    .uid("query-running-counts")
+                    .setParallelism(1);
+        }
+    }
+
+    /**
+     * Top N artists per window, with the approximate number of distinct listeners of each. Plays are counted per artist
+     * incrementally as they arrive (the window state is one counter and one fixed-size {@link HyperLogLog} sketch of
+     * player IDs per artist), and only the per-window totals are ranked, so the output is N records per window instead
+     * of one per event.
+     * <p>
+     * In event-time mode windows fire when the watermark passes their end, and events arriving within the allowed
+     * lateness after that update the window and re-fire it; later ones go to {@link #LATE_EVENTS}.
+     */
+    static void addTopArtists(DataStream<PlayEvent> plays, Config config, Catalog catalog, ResultSinks sinks) {
+        Time lateness = Time.milliseconds(config.isEventTime() ? config.getAllowedLateness() : 0);
+
+        SingleOutputStreamOperator<ArtistWindowCount> counts = withParallelism(plays
+                .keyBy(new ArtistKey())
+                .window(windowAssigner(config))
+                .allowedLateness(lateness)
+                .sideOutputLateData(LATE_EVENTS)
+                .aggregate(new PlayCount(), new ArtistWindowResult())
+                .name("artist-counts")
+                .uid("artist-counts"), config.getAggregateParallelism());
+
+        counts.getSideOutput(LATE_EVENTS)
+                .addSink(new LateEventLogger())
+                .name("late-events");
+
+        addRanking(counts, config, catalog, sinks);
+    }
+
+    // sliding windows if configured, otherwise tumbling ones of the window size
+    static WindowAssigner<Object, TimeWindow> windowAssigner(Config config) {
+        Time size = Time.seconds(config.getWindowSize());
+        Time slide = config.getWindowType() == WindowType.SLIDING ? Time.seconds(config.getWindowSlide()) : size;
+        if (config.isEventTime()) {
+            return config.getWindowType() == WindowType.SLIDING
+                    ? SlidingEventTimeWindows.of(size, slide) : TumblingEventTimeWindows.of(size);
+        }
+        return config.getWindowType() == WindowType.SLIDING
+                ? SlidingProcessingTimeWindows.of(size, slide) : TumblingProcessingTimeWindows.of(size);
+    }
+
+    /**
+     * Approximate top N songs per window, with an error bound on each count, in memory that does not grow with the
+     * number of distinct songs. Songs are hashed into one bucket per aggregation subtask, and each bucket keeps a
+     * {@link HeavyHitters} sketch per window instead of a counter per song; the sketches are keyed by the end of their
+     * window, and those of a window are merged and ranked together by {@link TopSongs}. Uses the configured windows, or
+     * tumbling windows of the window size.
+     * <p>
+     * The buckets are keys, so Flink assigns them to subtasks by key group, which may give some subtasks two buckets and
+     * others none.
+     * <p>
+     * The sketches are window state, so with the RocksDB state backend every play reads, updates and writes back a
+     * whole sketch (see {@link SongSketch}); use the heap backend for this mode.
+     */
+    static void addHeavyHitters(DataStream<PlayEvent> plays, Config config, Catalog catalog, ResultSinks sinks) {
+        if (config.getCheckpointInterval() > 0 && config.getStateBackend() == StateBackendType.ROCKSDB) {
+            log.warn("the RocksDB state backend serializes a {} KB song sketch for every play; use the heap backend "
+                    + "for heavy hitters", (long) config.getSketchWidth() * config.getSketchDepth() * 8 / 1024);
+        }
+        Time lateness = Time.milliseconds(config.isEventTime() ? config.getAllowedLateness() : 0);
+        int buckets = config.getAggregateParallelism() > 0
+                ? config.getAggregateParallelism() : plays.getExecutionEnvironment().getParallelism();
+        int capacity = config.getTopN() * CANDIDATES_PER_RANK;
+
+        SingleOutputStreamOperator<HeavyHitters> sketches = withParallelism(plays
+                .keyBy(new SongBucket(buckets))
+                .window(windowAssigner(config))
+                .allowedLateness(lateness)
+                .sideOutputLateData(LATE_EVENTS)
+                .aggregate(new SongSketch(capacity, config.getSketchWidth(), config.getSketchDepth()), new SketchWindowResult())
+                .name("song-sketches")
+                .uid("song-sketches"), config.getAggregateParallelism());
+
+        sketches.getSideOutput(LATE_EVENTS)
+                .addSink(new LateEventLogger())
+                .name("late-events");
+
+        SingleOutputStreamOperator<SongWindowCount> topSongs = sketches
+                .keyBy(new SketchWindowEnd())
+                .process(new TopSongs(config.getTopN(), buckets, capacity, config.getSketchWidth(),
+                        config.getSketchDepth(), config.isEventTime(), lateness.toMilliseconds()))
+                .name("top-songs")
+                .uid("top-songs")
+                .setParallelism(1);
+
+        if (config.isPrint()) withParallelism(topSongs.printToErr(), config.getSinkParallelism());
+
+        if (config.isElasticsearch()) {
+            withParallelism(toResultSinks(topSongs, new SongRankKey(), config)
+                    .addSink(sinks.topSongs(config, catalog))
+                    .name("Write top songs")
+                    .uid("es-top-songs"), config.getSinkParallelism());
+        }
+        if (config.getQueryPort() > 0) {
+            // the query service shows whole rankings, so it reads them from the side output
+            topSongs.getSideOutput(TopSongs.RANKINGS)
+                    .addSink(new QueryService.TopSongSink(config.getQueryPort(), catalog, config.getTopN()))
+                    .name("Query top songs")
+                    .uid("query-top-songs")
+                    .setParallelism(1);
+        }
+    }
+
+    /**
+     * Ranks the per-artist results of each window and writes the top N. The results are keyed by the end of their
+     * window rather than collected in panes of the ranking's own clock, so in processing time too each window is ranked
+     * from all of its results (see {@link WindowRanking}).
+     */
+    static void addRanking(DataStream<ArtistWindowCount> counts, Config config, Catalog catalog, ResultSinks sinks) {
+        long lateness = config.isEventTime() ? config.getAllowedLateness() : 0;
+
+        SingleOutputStreamOperator<ArtistWindowCount> topArtists = counts
+                .keyBy(new ArtistWindowEnd())
+                .process(new TopArtists(config.getTopN(), config.isEventTime(), lateness))
+                .name("top-artists")
+                .uid("top-artists")
+                .setParallelism(1);
+
+        // create an output sink to print to stdout for verification
+        if (config.isPrint()) withParallelism(topArtists.printToErr(), config.getSinkParallelism());
+
+        if (config.isElasticsearch()) {
+            withParallelism(toResultSinks(topArtists, new ArtistRankKey(), config)
+                    .addSink(sinks.topArtists(config, catalog))
+                    .name("Write top artists")
+                    .uid("es-top-artists"), config.getSinkParallelism());
+        }
+        if (config.getQueryPort() > 0) {
+            // the query service shows whole rankings, so it reads them from the side output
+            topArtists.getSideOutput(TopArtists.RANKINGS)
+                    .addSink(new QueryService.TopArtistSink(config.getQueryPort(), catalog, config.getTopN()))
+                    .name("Query top artists")
+                    .uid("query-top-artists")
+                    .setParallelism(1);
+        }
+    }
+
+    /**
+     * Uses the time the generator created the event, or the time it is read for events that carry none. The watermark
+     * trails the largest timestamp seen by {@code maxOutOfOrderness}.
+     */
+    public static class PlayTimestampExtractor extends BoundedOutOfOrdernessTimestampExtractor<PlayEvent> {
+
+        public PlayTimestampExtractor(long maxOutOfOrderness) {
+            super(Time.milliseconds(maxOutOfOrderness));
+        }
+
+        @Override
+        public long extractTimestamp(PlayEvent event) {
+            return event.timestamp > 0 ? event.timestamp : System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Keeps valid plays created at or after {@code startTime}; 0 keeps all of them. Plays without a timestamp are
+     * kept, since when they were created is unknown.
+     */
+    public static class PlaysSince implements FilterFunction<PlayEvent> {
+        private long startTime;
+
+        public PlaysSince(long startTime) {
+            this.startTime = startTime;
+        }
+
+        @Override
+        public boolean filter(PlayEvent event) {
+            return event.isValid() && (event.timestamp == 0 || event.timestamp >= startTime);
+        }
+    }
+
+    public static class ArtistKey implements KeySelector<PlayEvent, Integer> {
+        @Override
+        public Integer getKey(PlayEvent event) {
+            return event.artistId;
+        }
+    }
+
+    public static class CountArtistKey implements KeySelector<Tuple2<Integer, Integer>, Integer> {
+        @Override
+        public Integer getKey(Tuple2<Integer, Integer> count) {
+            return count.f0;
+        }
+    }
+
+    public static class ArtistRankKey implements KeySelector<ArtistWindowCount, Integer> {
+        @Override
+        public Integer getKey(ArtistWindowCount count) {
+            return count.rank;
+        }
+    }
+
+    public static class ArtistWindowEnd implements KeySelector<ArtistWindowCount, Long> {
+        @Override
+        public Long getKey(ArtistWindowCount count) {
+            return count.windowEnd;
+        }
+    }
+
+    public static class SketchWindowEnd implements KeySelector<HeavyHitters, Long> {
+        @Override
+        public Long getKey(HeavyHitters sketch) {
+            return sketch.windowEnd;
+        }
+    }
+
+    public static class SongRankKey implements KeySelector<SongWindowCount, Integer> {
+        @Override
+        public Integer getKey(SongWindowCount count) {
+            return count.rank;
+        }
+    }
+
+    /**
+     * Window state of one artist: the play count and a sketch of the players who played the artist. The heap state
+     * backend updates it in place; the RocksDB backend stores it serialized, so every play copies the 4 KB of
+     * {@link HyperLogLog} registers out of RocksDB and writes them back. Prefer the heap backend for windowed counts
+     * at high rates, and RocksDB when the number of artists times open windows outgrows memory.
+     */
+    public static class PlayStats {
+        public long count;
+        public HyperLogLog listeners = new HyperLogLog();
+    }
+
+    public static class PlayCount implements AggregateFunction<PlayEvent, PlayStats, PlayStats> {
+        @Override
+        public PlayStats createAccumulator() {
+            return new PlayStats();
+        }
+
+        @Override
+        public PlayStats add(PlayEvent event, PlayStats stats) {
+            stats.count++;
+            stats.listeners.add(event.playerId);
+            return stats;
+        }
+
+        @Override
+        public PlayStats getResult(PlayStats stats) {
+            return stats;
+        }
+
+        @Override
+        public PlayStats merge(PlayStats a, PlayStats b) {
+            a.count += b.count;
+            a.listeners.merge(b.listeners);
+            return a;
+        }
+    }
+
+    /**
+     * Spreads songs evenly over {@code buckets} keys.
+     */
+    public static class SongBucket implements KeySelector<PlayEvent, Integer> {
+        private int buckets;
+
+        public SongBucket(int buckets) {
+            this.buckets = buckets;
+        }
+
+        @Override
+        public Integer getKey(PlayEvent event) {
+            return Math.floorMod(event.songId, buckets);
+        }
+    }
+
+    /**
+     * Counts the plays of a bucket's songs in a {@link HeavyHitters} accumulator. On the heap state backend the
+     * accumulator is updated in place. The RocksDB backend keeps it serialized instead, so each play deserializes the
+     * Count-Min counters and candidates and writes them back (about 64 KB at the default width and depth); at event
+     * rates that cost dominates the job.
+     */
+    public static class SongSketch implements AggregateFunction<PlayEvent, HeavyHitters, HeavyHitters> {
+        private int capacity;
+        private int width;
+        private int depth;
+
+        public SongSketch(int capacity, int width, int depth) {
+            this.capacity = capacity;
+            this.width = width;
+            this.depth = depth;
+        }
+
+        @Override
+        public HeavyHitters createAccumulator() {
+            return new HeavyHitters(capacity, width, depth);
+        }
+
+        @Override
+        public HeavyHitters add(PlayEvent event, HeavyHitters sketch) {
+            sketch.add(event.songId);
+            return sketch;
+        }
+
+        @Override
+        public HeavyHitters getResult(HeavyHitters sketch) {
+            return sketch;
+        }
+
+        @Override
+        public HeavyHitters merge(HeavyHitters a, HeavyHitters b) {
+            return a.merge(b);
+        }
+    }
+
+    /**
+     * Emits a copy of the window's sketch tagged with its bucket and window; the sketch itself stays in the window state,
+     * where late plays may still update it.
+     */
+    public static class SketchWindowResult extends ProcessWindowFunction<HeavyHitters, HeavyHitters, Integer, TimeWindow> {
+        @Override
+        public void process(Integer bucket, Context context, Iterable<HeavyHitters> results, Collector<HeavyHitters> out) {
+            HeavyHitters sketch = results.iterator().next();
+            HeavyHitters result = new HeavyHitters(sketch.keys.length, sketch.sketch.getWidth(), sketch.sketch.depth)
+                    .merge(sketch);
+            result.bucket = bucket;
+            result.windowEnd = context.window().getEnd();
+            out.collect(result);
+        }
+    }
+
+    public static class ArtistWindowResult extends ProcessWindowFunction<PlayStats, ArtistWindowCount, Integer, TimeWindow> {
+        @Override
+        public void process(Integer artistId, Context context, Iterable<PlayStats> results, Collector<ArtistWindowCount> out) {
+            PlayStats stats = results.iterator().next();
+            out.collect(new ArtistWindowCount(artistId, context.window().getEnd(), stats.count, stats.listeners.estimate()));
+        }
+    }
+
     public static class RowSplitter implements
             MapFunction<String, Tuple3<String, String, String>> {
+        // ObjectReader is immutable and thread-safe, so one instance serves every record
+        private static final ObjectReader JSON_READER = new ObjectMapper().readerFor(JSONDataCustom.class);
 
         public Tuple3<String, String, String> map(String row)
                 throws Exception {
 
-            JSONDataCustom obj = new ObjectMapper().readValue(row, JSONDataCustom.class);
+            JSONDataCustom obj = JSON_READER.readValue(row);
 
             return new Tuple3<String, String, String>(
                     obj.playerId,
@@ -174,16 +854,266 @@ public class SongPlayReader {
         }
     }
 
-    public static class ArtistCount implements
-            FlatMapFunction<Tuple3<String, String, String>, Tuple2<String, Integer>> {
-            //FlatMapFunction<Tuple3<String, String, String>, String> {
+    /**
+     * Passes valid play events through and sends the raw text of malformed ones to {@link #MALFORMED_EVENTS}. Counts
+     * the malformed events and measures, from the embedded timestamps, how long events took to get from the generator
+     * to here.
+     */
+    public static class PlayEventFilter extends ProcessFunction<PlayEvent, PlayEvent> {
+        private transient Counter malformedEvents;
+        private transient LatencyHistogram eventLatency;
 
-        public void flatMap(Tuple3<String, String, String> list, Collector<Tuple2<String, Integer>> out)
-                throws Exception {
+        @Override
+        public void open(Configuration parameters) {
+            malformedEvents = getRuntimeContext().getMetricGroup().counter("malformedEvents");
+            eventLatency = getRuntimeContext().getMetricGroup().histogram("eventLatencyMillis", new LatencyHistogram());
+        }
+
+        @Override
+        public void processElement(PlayEvent event, Context ctx, Collector<PlayEvent> out) {
+            if (event.isValid()) {
+                if (event.timestamp > 0) eventLatency.update(System.currentTimeMillis() - event.timestamp);
+                out.collect(event);
+            } else {
+                malformedEvents.inc();
+                ctx.output(MALFORMED_EVENTS, event.malformed);
+            }
+        }
+    }
+
+    /**
+     * Keeps valid play events and logs malformed ones, counting them in the {@link #MALFORMED_EVENTS_ACCUMULATOR}
+     * accumulator, whose total is logged when the batch job ends. DataSets have no side outputs.
+     */
+    public static class BatchPlayEventFilter extends RichFilterFunction<PlayEvent> {
+        private transient IntCounter malformedEvents;
+
+        @Override
+        public void open(Configuration parameters) {
+            malformedEvents = new IntCounter();
+            getRuntimeContext().addAccumulator(MALFORMED_EVENTS_ACCUMULATOR, malformedEvents);
+        }
+
+        @Override
+        public boolean filter(PlayEvent event) {
+            if (event.isValid()) return true;
+            malformedEvents.add(1);
+            log.warn("skipping malformed event: {}", event.malformed);
+            return false;
+        }
+    }
+
+    public static class MalformedEventLogger implements SinkFunction<String> {
+
+        @Override
+        public void invoke(String value, Context context) {
+            log.warn("skipping malformed event: {}", value);
+        }
+    }
 
-                out.collect(new Tuple2<String, Integer> (list.f2, 1));
-               // out.collect(new String (list.f2.toString() + ", 1"));
+    /**
+     * Counts plays that arrived after their windows were complete. They are only logged individually at debug level.
+     */
+    public static class LateEventLogger implements SinkFunction<PlayEvent> {
+        private long lateEvents;
 
+        @Override
+        public void invoke(PlayEvent event, Context context) {
+            if (++lateEvents % 10000 == 1) log.warn("{} late events dropped so far", lateEvents);
+            log.debug("dropping late event: {}", event);
+        }
+    }
+
+    /**
+     * Maps each play to (artistId, 1). The output tuple is reused, since the keyBy that follows serializes it before
+     * the next play arrives.
+     */
+    public static class ArtistCount implements FlatMapFunction<PlayEvent, Tuple2<Integer, Integer>> {
+        private transient Tuple2<Integer, Integer> result;
+
+        @Override
+        public void flatMap(PlayEvent event, Collector<Tuple2<Integer, Integer>> out) {
+            if (result == null) result = new Tuple2<>(0, 1);
+            result.f0 = event.artistId;
+            out.collect(result);
+        }
+    }
+
+    /**
+     * Translates an artist ID back to the artist name, for human-readable output.
+     */
+    public static class ArtistName implements MapFunction<Tuple2<Integer, Integer>, Tuple2<String, Integer>> {
+        private Catalog catalog;
+
+        public ArtistName(Catalog catalog) {
+            this.catalog = catalog;
+        }
+
+        @Override
+        public Tuple2<String, Integer> map(Tuple2<Integer, Integer> count) {
+            return new Tuple2<>(catalog.getArtist(count.f0), count.f1);
+        }
+    }
+
+    /**
+     * Builds an Elasticsearch sink for the configured endpoint, with the configured bulk flushing and backoff.
+     */
+    static <T> ElasticsearchSink<T> createElasticsearchSink(Config config, ElasticsearchResultFunction<T> sinkFunction) {
+        List<HttpHost> httpHosts = new ArrayList<>();
+        httpHosts.add(new HttpHost(config.getIpES(), config.getPortES(), config.getSchemeES()));
+
+        ElasticsearchSink.Builder<T> esSinkBuilder = new ElasticsearchSink.Builder<>(httpHosts, sinkFunction);
+        esSinkBuilder.setBulkFlushMaxActions(config.getBulkActionsES());
+        esSinkBuilder.setBulkFlushMaxSizeMb(config.getBulkSizeMbES());
+        esSinkBuilder.setBulkFlushInterval(config.getFlushIntervalES());
+        if (config.getBackoffTypeES() != null) {
+            esSinkBuilder.setBulkFlushBackoff(true);
+            esSinkBuilder.setBulkFlushBackoffType(config.getBackoffTypeES());
+            esSinkBuilder.setBulkFlushBackoffDelay(config.getBackoffDelayES());
+            esSinkBuilder.setBulkFlushBackoffRetries(config.getBackoffRetriesES());
+            // re-queue bulk items that were rejected because the ES write queue was full
+            esSinkBuilder.setFailureHandler(new RetryRejectedExecutionFailureHandler());
+        } else {
+            esSinkBuilder.setBulkFlushBackoff(false);
+        }
+        // the factory and the sink function are deserialized together, so each subtask's client times into the
+        // histogram its sink function registers
+        esSinkBuilder.setRestClientFactory(restClientBuilder ->
+                configureRestClient(restClientBuilder, sinkFunction.getBulkLatency()));
+        return esSinkBuilder.build();
+    }
+
+    /**
+     * Sets the Elasticsearch credentials and times bulk requests into {@code bulkLatency}.
+     */
+    static void configureRestClient(RestClientBuilder restClientBuilder, LatencyHistogram bulkLatency) {
+        restClientBuilder.setHttpClientConfigCallback(new RestClientBuilder.HttpClientConfigCallback() {
+            @Override
+            public HttpAsyncClientBuilder customizeHttpClient(HttpAsyncClientBuilder httpClientBuilder) {
+
+                // elasticsearch username and password
+                CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials("elastic", "secret"));
+
+                // time bulk requests from when they are sent until their response arrives
+                HttpRequestInterceptor requestStart = (request, context) -> {
+                    if (request.getRequestLine().getUri().contains("_bulk"))
+                        context.setAttribute(REQUEST_START, System.nanoTime());
+                };
+                HttpResponseInterceptor requestEnd = (response, context) -> {
+                    Object start = context.getAttribute(REQUEST_START);
+                    if (start != null)
+                        bulkLatency.update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - (Long) start));
+                };
+
+                return httpClientBuilder.setDefaultCredentialsProvider(credentialsProvider)
+                        .addInterceptorLast(requestStart)
+                        .addInterceptorFirst(requestEnd);
+            }
+        });
+    }
+
+    /**
+     * Turns results into Elasticsearch update requests, and registers the latency of the subtask's bulk requests in
+     * its metric group. Every sink subtask deserializes its own copy of the function, so each has its own histogram,
+     * which the REST client of that subtask records into.
+     */
+    public abstract static class ElasticsearchResultFunction<T> implements ElasticsearchSinkFunction<T> {
+        private transient LatencyHistogram bulkLatency;
+        private transient boolean metricsRegistered;
+
+        public abstract UpdateRequest createUpdateRequest(T element);
+
+        /**
+         * @return the bulk request latency of this subtask, created by whichever of the REST client and the first
+         * element asks for it first; both do so from the task thread
+         */
+        LatencyHistogram getBulkLatency() {
+            if (bulkLatency == null) bulkLatency = new LatencyHistogram();
+            return bulkLatency;
+        }
+
+        @Override
+        public void process(T element, RuntimeContext ctx, RequestIndexer indexer) {
+            // sink functions have no open(), so register with the first element
+            if (!metricsRegistered) {
+                ctx.getMetricGroup().histogram("esBulkLatencyMillis", getBulkLatency());
+                metricsRegistered = true;
+            }
+            indexer.add(createUpdateRequest(element));
+        }
+    }
+
+    /**
+     * Upserts the running play count of each artist into a document whose ID is the artist name, so the index holds
+     * one document per artist and replayed updates are idempotent.
+     */
+    public static class ArtistCountSinkFunction extends ElasticsearchResultFunction<Tuple2<Integer, Integer>> {
+        private Catalog catalog;
+
+        public ArtistCountSinkFunction(Catalog catalog) {
+            this.catalog = catalog;
+        }
+
+        @Override
+        public UpdateRequest createUpdateRequest(Tuple2<Integer, Integer> element) {
+            String artist = catalog.getArtist(element.f0);
+            Map<String, Object> json = new HashMap<>();
+            json.put("artist", artist);
+            json.put("count", element.f1);
+            return new UpdateRequest(ELASTIC_SEARCH_INDEX, ELASTIC_SEARCH_TYPE, artist)
+                    .doc(json)
+                    .docAsUpsert(true);
+        }
+    }
+
+    /**
+     * Keeps one document per rank (document ID = rank) holding the artist currently at that rank.
+     */
+    public static class TopArtistSinkFunction extends ElasticsearchResultFunction<ArtistWindowCount> {
+        private Catalog catalog;
+
+        public TopArtistSinkFunction(Catalog catalog) {
+            this.catalog = catalog;
+        }
+
+        @Override
+        public UpdateRequest createUpdateRequest(ArtistWindowCount element) {
+            Map<String, Object> json = new HashMap<>();
+            json.put("rank", element.rank);
+            json.put("artist", catalog.getArtist(element.artistId));
+            json.put("count", element.count);
+            json.put("listeners", element.listeners);
+            json.put("windowEnd", element.windowEnd);
+            return new UpdateRequest(ELASTIC_SEARCH_TOP_INDEX, ELASTIC_SEARCH_TYPE, Integer.toString(element.rank))
+                    .doc(json)
+                    .docAsUpsert(true);
+        }
+    }
+
+    /**
+     * Keeps one document per rank (document ID = rank) holding the song currently at that rank, its approximate play
+     * count and the error bound of the count.
+     */
+    public static class TopSongSinkFunction extends ElasticsearchResultFunction<SongWindowCount> {
+        private Catalog catalog;
+
+        public TopSongSinkFunction(Catalog catalog) {
+            this.catalog = catalog;
+        }
+
+        @Override
+        public UpdateRequest createUpdateRequest(SongWindowCount element) {
+            Map<String, Object> json = new HashMap<>();
+            json.put("rank", element.rank);
+            json.put("song", catalog.getSong(element.songId));
+            json.put("artist", catalog.getArtist(catalog.getArtistId(element.songId)));
+            json.put("count", element.count);
+            json.put("error", element.error);
+            json.put("windowEnd", element.windowEnd);
+            return new UpdateRequest(ELASTIC_SEARCH_TOP_SONGS_INDEX, ELASTIC_SEARCH_TYPE, Integer.toString(element.rank))
+                    .doc(json)
+                    .docAsUpsert(true);
         }
     }
 
@@ -198,6 +1128,49 @@ public class SongPlayReader {
         String ipES = ELASTIC_SEARCH_IP;
         int portES = ELASTIC_SEARCH_PORT;
         String schemeES= ELASTIC_SEARCH_SCHEME;
+        int bulkActionsES = DEFAULT_BULK_ACTIONS_ES;
+        int bulkSizeMbES = DEFAULT_BULK_SIZE_MB_ES;
+        long flushIntervalES = DEFAULT_FLUSH_INTERVAL_ES;
+        FlushBackoffType backoffTypeES = DEFAULT_BACKOFF_TYPE_ES; // null disables backoff
+        long backoffDelayES = DEFAULT_BACKOFF_DELAY_ES;
+        int backoffRetriesES = DEFAULT_BACKOFF_RETRIES_ES;
+        WindowType windowType; // null means running counts per event
+        long windowSize = DEFAULT_WINDOW_SIZE;
+        long windowSlide = DEFAULT_WINDOW_SLIDE;
+        int topN = DEFAULT_TOP_N;
+        boolean heavyHitters; // approximate top songs instead of exact artist counts
+        int sketchWidth = DEFAULT_SKETCH_WIDTH;
+        int sketchDepth = DEFAULT_SKETCH_DEPTH;
+        boolean eventTime;
+        long maxOutOfOrderness = DEFAULT_MAX_OUT_OF_ORDERNESS;
+        long allowedLateness = DEFAULT_ALLOWED_LATENESS;
+        boolean preAggregate;
+        int preAggregateEvents = DEFAULT_PRE_AGGREGATE_EVENTS;
+        long preAggregateMillis = DEFAULT_PRE_AGGREGATE_MILLIS;
+        int preAggregateKeys = DEFAULT_PRE_AGGREGATE_KEYS;
+        long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+        CheckpointingMode checkpointMode = DEFAULT_CHECKPOINT_MODE;
+        long checkpointTimeout = DEFAULT_CHECKPOINT_TIMEOUT;
+        StateBackendType stateBackend = DEFAULT_STATE_BACKEND;
+        String checkpointDir = DEFAULT_CHECKPOINT_DIR;
+        MetricsReporter metricsReporter; // null means no reporter is added to a local environment
+        int metricsPort; // 0 means the reporter's default
+        boolean print; // print every result to stderr
+        boolean elasticsearch = true; // write results to the result sinks
+        int queryPort; // 0 disables the query service
+        int sourceParallelism; // 0 means the environment's default, for all the stage parallelisms
+        int parseParallelism;
+        int aggregateParallelism;
+        int sinkParallelism;
+        int maxParallelism; // 0 means Flink's default
+        boolean chaining = true;
+        boolean objectReuse = true;
+        boolean sql; // aggregate with SQL queries instead of DataStream operators
+        String sqlQuery; // an additional query whose results are printed
+        String startAt; // null means the head, or the positions of a restored checkpoint
+        long startTime; // ms since the epoch, 0 keeps all events
+        boolean batch;
+        String endAt = Utils.TAIL; // batch mode only
 
         public Config() {
         }
@@ -243,6 +1216,383 @@ public class SongPlayReader {
             this.schemeES = schemeES;
         }
 
+        public int getBulkActionsES() {
+            return bulkActionsES;
+        }
+
+        public void setBulkActionsES(int bulkActionsES) {
+            if (bulkActionsES <= 0) throw new IllegalArgumentException("es bulk actions must be greater than 0");
+            this.bulkActionsES = bulkActionsES;
+        }
+
+        public int getBulkSizeMbES() {
+            return bulkSizeMbES;
+        }
+
+        public void setBulkSizeMbES(int bulkSizeMbES) {
+            if (bulkSizeMbES <= 0) throw new IllegalArgumentException("es bulk size must be greater than 0");
+            this.bulkSizeMbES = bulkSizeMbES;
+        }
+
+        public long getFlushIntervalES() {
+            return flushIntervalES;
+        }
+
+        public void setFlushIntervalES(long flushIntervalES) {
+            if (flushIntervalES <= 0) throw new IllegalArgumentException("es flush interval must be greater than 0");
+            this.flushIntervalES = flushIntervalES;
+        }
+
+        public FlushBackoffType getBackoffTypeES() {
+            return backoffTypeES;
+        }
+
+        public void setBackoffTypeES(FlushBackoffType backoffTypeES) {
+            this.backoffTypeES = backoffTypeES;
+        }
+
+        public long getBackoffDelayES() {
+            return backoffDelayES;
+        }
+
+        public void setBackoffDelayES(long backoffDelayES) {
+            if (backoffDelayES <= 0) throw new IllegalArgumentException("es backoff delay must be greater than 0");
+            this.backoffDelayES = backoffDelayES;
+        }
+
+        public int getBackoffRetriesES() {
+            return backoffRetriesES;
+        }
+
+        public void setBackoffRetriesES(int backoffRetriesES) {
+            if (backoffRetriesES <= 0) throw new IllegalArgumentException("es backoff retries must be greater than 0");
+            this.backoffRetriesES = backoffRetriesES;
+        }
+
+        public WindowType getWindowType() {
+            return windowType;
+        }
+
+        public void setWindowType(WindowType windowType) {
+            this.windowType = windowType;
+        }
+
+        public long getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(long windowSize) {
+            if (windowSize <= 0) throw new IllegalArgumentException("window size must be greater than 0");
+            this.windowSize = windowSize;
+        }
+
+        public long getWindowSlide() {
+            return windowSlide;
+        }
+
+        public void setWindowSlide(long windowSlide) {
+            if (windowSlide <= 0) throw new IllegalArgumentException("window slide must be greater than 0");
+            this.windowSlide = windowSlide;
+        }
+
+        public int getTopN() {
+            return topN;
+        }
+
+        public void setTopN(int topN) {
+            if (topN <= 0) throw new IllegalArgumentException("top n must be greater than 0");
+            this.topN = topN;
+        }
+
+        public boolean isHeavyHitters() {
+            return heavyHitters;
+        }
+
+        public void setHeavyHitters(boolean heavyHitters) {
+            this.heavyHitters = heavyHitters;
+        }
+
+        public int getSketchWidth() {
+            return sketchWidth;
+        }
+
+        public void setSketchWidth(int sketchWidth) {
+            if (sketchWidth <= 0 || Integer.bitCount(sketchWidth) != 1) throw new IllegalArgumentException("sketch width must be a power of 2");
+            this.sketchWidth = sketchWidth;
+        }
+
+        public int getSketchDepth() {
+            return sketchDepth;
+        }
+
+        public void setSketchDepth(int sketchDepth) {
+            if (sketchDepth <= 0 || sketchDepth > 16) throw new IllegalArgumentException("sketch depth must be between 1 and 16");
+            this.sketchDepth = sketchDepth;
+        }
+
+        public boolean isEventTime() {
+            return eventTime;
+        }
+
+        public void setEventTime(boolean eventTime) {
+            this.eventTime = eventTime;
+        }
+
+        public long getMaxOutOfOrderness() {
+            return maxOutOfOrderness;
+        }
+
+        public void setMaxOutOfOrderness(long maxOutOfOrderness) {
+            if (maxOutOfOrderness < 0) throw new IllegalArgumentException("max out of orderness must not be negative");
+            this.maxOutOfOrderness = maxOutOfOrderness;
+        }
+
+        public long getAllowedLateness() {
+            return allowedLateness;
+        }
+
+        public void setAllowedLateness(long allowedLateness) {
+            if (allowedLateness < 0) throw new IllegalArgumentException("allowed lateness must not be negative");
+            this.allowedLateness = allowedLateness;
+        }
+
+        public boolean isPreAggregate() {
+            return preAggregate;
+        }
+
+        public void setPreAggregate(boolean preAggregate) {
+            this.preAggregate = preAggregate;
+        }
+
+        public int getPreAggregateEvents() {
+            return preAggregateEvents;
+        }
+
+        public void setPreAggregateEvents(int preAggregateEvents) {
+            if (preAggregateEvents <= 0) throw new IllegalArgumentException("pre-aggregate events must be greater than 0");
+            this.preAggregateEvents = preAggregateEvents;
+        }
+
+        public long getPreAggregateMillis() {
+            return preAggregateMillis;
+        }
+
+        public void setPreAggregateMillis(long preAggregateMillis) {
+            if (preAggregateMillis <= 0) throw new IllegalArgumentException("pre-aggregate millis must be greater than 0");
+            this.preAggregateMillis = preAggregateMillis;
+        }
+
+        public int getPreAggregateKeys() {
+            return preAggregateKeys;
+        }
+
+        public void setPreAggregateKeys(int preAggregateKeys) {
+            if (preAggregateKeys <= 0) throw new IllegalArgumentException("pre-aggregate keys must be greater than 0");
+            this.preAggregateKeys = preAggregateKeys;
+        }
+
+        public long getCheckpointInterval() {
+            return checkpointInterval;
+        }
+
+        public void setCheckpointInterval(long checkpointInterval) {
+            if (checkpointInterval < 0) throw new IllegalArgumentException("checkpoint interval must not be negative");
+            this.checkpointInterval = checkpointInterval;
+        }
+
+        public CheckpointingMode getCheckpointMode() {
+            return checkpointMode;
+        }
+
+        public void setCheckpointMode(CheckpointingMode checkpointMode) {
+            this.checkpointMode = checkpointMode;
+        }
+
+        public long getCheckpointTimeout() {
+            return checkpointTimeout;
+        }
+
+        public void setCheckpointTimeout(long checkpointTimeout) {
+            if (checkpointTimeout <= 0) throw new IllegalArgumentException("checkpoint timeout must be greater than 0");
+            this.checkpointTimeout = checkpointTimeout;
+        }
+
+        public StateBackendType getStateBackend() {
+            return stateBackend;
+        }
+
+        public void setStateBackend(StateBackendType stateBackend) {
+            this.stateBackend = stateBackend;
+        }
+
+        public String getCheckpointDir() {
+            return checkpointDir;
+        }
+
+        public void setCheckpointDir(String checkpointDir) {
+            if (!URI.create(checkpointDir).isAbsolute()) throw new IllegalArgumentException("checkpoint dir must be a URI such as file:///path");
+            this.checkpointDir = checkpointDir;
+        }
+
+        public MetricsReporter getMetricsReporter() {
+            return metricsReporter;
+        }
+
+        public void setMetricsReporter(MetricsReporter metricsReporter) {
+            this.metricsReporter = metricsReporter;
+        }
+
+        public int getMetricsPort() {
+            return metricsPort;
+        }
+
+        public void setMetricsPort(int metricsPort) {
+            if (metricsPort < 0 || metricsPort > 65535) throw new IllegalArgumentException("metrics port must be between 0 and 65535");
+            this.metricsPort = metricsPort;
+        }
+
+        public boolean isPrint() {
+            return print;
+        }
+
+        public void setPrint(boolean print) {
+            this.print = print;
+        }
+
+        public boolean isElasticsearch() {
+            return elasticsearch;
+        }
+
+        public void setElasticsearch(boolean elasticsearch) {
+            this.elasticsearch = elasticsearch;
+        }
+
+        public int getQueryPort() {
+            return queryPort;
+        }
+
+        public void setQueryPort(int queryPort) {
+            if (queryPort < 0 || queryPort > 65535) throw new IllegalArgumentException("query port must be between 0 and 65535");
+            this.queryPort = queryPort;
+        }
+
+        public int getSourceParallelism() {
+            return sourceParallelism;
+        }
+
+        public void setSourceParallelism(int sourceParallelism) {
+            if (sourceParallelism < 0) throw new IllegalArgumentException("source parallelism must not be negative");
+            this.sourceParallelism = sourceParallelism;
+        }
+
+        public int getParseParallelism() {
+            return parseParallelism;
+        }
+
+        public void setParseParallelism(int parseParallelism) {
+            if (parseParallelism < 0) throw new IllegalArgumentException("parse parallelism must not be negative");
+            this.parseParallelism = parseParallelism;
+        }
+
+        public int getAggregateParallelism() {
+            return aggregateParallelism;
+        }
+
+        public void setAggregateParallelism(int aggregateParallelism) {
+            if (aggregateParallelism < 0) throw new IllegalArgumentException("aggregate parallelism must not be negative");
+            this.aggregateParallelism = aggregateParallelism;
+        }
+
+        public int getSinkParallelism() {
+            return sinkParallelism;
+        }
+
+        public void setSinkParallelism(int sinkParallelism) {
+            if (sinkParallelism < 0) throw new IllegalArgumentException("sink parallelism must not be negative");
+            this.sinkParallelism = sinkParallelism;
+        }
+
+        public int getMaxParallelism() {
+            return maxParallelism;
+        }
+
+        public void setMaxParallelism(int maxParallelism) {
+            // Flink's upper bound for key groups
+            if (maxParallelism < 0 || maxParallelism > 32768)
+                throw new IllegalArgumentException("max parallelism must be between 0 and 32768");
+            this.maxParallelism = maxParallelism;
+        }
+
+        public boolean isChaining() {
+            return chaining;
+        }
+
+        public void setChaining(boolean chaining) {
+            this.chaining = chaining;
+        }
+
+        public boolean isObjectReuse() {
+            return objectReuse;
+        }
+
+        public void setObjectReuse(boolean objectReuse) {
+            this.objectReuse = objectReuse;
+        }
+
+        public boolean isSql() {
+            return sql;
+        }
+
+        public void setSql(boolean sql) {
+            this.sql = sql;
+        }
+
+        public String getSqlQuery() {
+            return sqlQuery;
+        }
+
+        public void setSqlQuery(String sqlQuery) {
+            if (sqlQuery != null && sqlQuery.trim().isEmpty()) throw new IllegalArgumentException("sql query must not be empty");
+            this.sqlQuery = sqlQuery;
+        }
+
+        public String getStartAt() {
+            return startAt;
+        }
+
+        public void setStartAt(String startAt) {
+            Utils.validatePosition(startAt);
+            this.startAt = startAt;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public void setStartTime(long startTime) {
+            if (startTime < 0) throw new IllegalArgumentException("start time must not be negative");
+            this.startTime = startTime;
+        }
+
+        public boolean isBatch() {
+            return batch;
+        }
+
+        public void setBatch(boolean batch) {
+            this.batch = batch;
+        }
+
+        public String getEndAt() {
+            return endAt;
+        }
+
+        public void setEndAt(String endAt) {
+            if (endAt == null || Utils.HEAD.equals(endAt))
+                throw new IllegalArgumentException("end position must be tail or a stream cut");
+            Utils.validatePosition(endAt);
+            this.endAt = endAt;
+        }
+
         @Override
         public String toString() {
             return "Config{" +
@@ -250,9 +1600,53 @@ public class SongPlayReader {
                     ", scope='" + scope + '\'' +
                     ", stream='" + stream + '\'' +
                     ", useKeycloak=" + useKeycloak +
+                    ", catalogFile=" + catalogFile +
                     ", schemeES=" + schemeES +
                     ", ipES=" + ipES +
                     ", portES=" + portES +
+                    ", bulkActionsES=" + bulkActionsES +
+                    ", bulkSizeMbES=" + bulkSizeMbES +
+                    ", flushIntervalES=" + flushIntervalES +
+                    ", backoffTypeES=" + backoffTypeES +
+                    ", backoffDelayES=" + backoffDelayES +
+                    ", backoffRetriesES=" + backoffRetriesES +
+                    ", windowType=" + windowType +
+                    ", windowSize=" + windowSize +
+                    ", windowSlide=" + windowSlide +
+                    ", topN=" + topN +
+                    ", heavyHitters=" + heavyHitters +
+                    ", sketchWidth=" + sketchWidth +
+                    ", sketchDepth=" + sketchDepth +
+                    ", eventTime=" + eventTime +
+                    ", maxOutOfOrderness=" + maxOutOfOrderness +
+                    ", allowedLateness=" + allowedLateness +
+                    ", preAggregate=" + preAggregate +
+                    ", preAggregateEvents=" + preAggregateEvents +
+                    ", preAggregateMillis=" + preAggregateMillis +
+                    ", preAggregateKeys=" + preAggregateKeys +
+                    ", checkpointInterval=" + checkpointInterval +
+                    ", checkpointMode=" + checkpointMode +
+                    ", checkpointTimeout=" + checkpointTimeout +
+                    ", stateBackend=" + stateBackend +
+                    ", checkpointDir=" + checkpointDir +
+                    ", metricsReporter=" + metricsReporter +
+                    ", metricsPort=" + metricsPort +
+                    ", print=" + print +
+                    ", elasticsearch=" + elasticsearch +
+                    ", queryPort=" + queryPort +
+                    ", sourceParallelism=" + sourceParallelism +
+                    ", parseParallelism=" + parseParallelism +
+                    ", aggregateParallelism=" + aggregateParallelism +
+                    ", sinkParallelism=" + sinkParallelism +
+                    ", maxParallelism=" + maxParallelism +
+                    ", chaining=" + chaining +
+                    ", objectReuse=" + objectReuse +
+                    ", sql=" + sql +
+                    ", sqlQuery=" + sqlQuery +
+                    ", startAt=" + startAt +
+                    ", startTime=" + startTime +
+                    ", batch=" + batch +
+                    ", endAt=" + endAt +
                     '}';
         }
     }
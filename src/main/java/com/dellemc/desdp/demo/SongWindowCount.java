@@ -0,0 +1,38 @@
+package com.dellemc.desdp.demo;
+
+import java.io.Serializable;
+
+/**
+ * The approximate play count of one song in one window, as ranked by {@link TopSongs}. The true count is at most
+ * {@link #count} and, with the confidence of the sketch, at least {@code count - error}. {@link #rank} is the song's
+ * position (1 is the most played).
+ */
+public class SongWindowCount implements Serializable {
+    public int songId;
+    public long windowEnd;
+    public long count;
+    public long error;
+    public int rank;
+
+    public SongWindowCount() {
+    }
+
+    public SongWindowCount(int songId, long windowEnd, long count, long error, int rank) {
+        this.songId = songId;
+        this.windowEnd = windowEnd;
+        this.count = count;
+        this.error = error;
+        this.rank = rank;
+    }
+
+    @Override
+    public String toString() {
+        return "{" +
+                "songId=" + songId +
+                ", windowEnd=" + windowEnd +
+                ", count=" + count +
+                ", error=" + error +
+                ", rank=" + rank +
+                '}';
+    }
+}
@@ -0,0 +1,191 @@
+package com.dellemc.desdp.demo;
+
+import org.apache.flink.api.common.functions.FlatMapFunction;
+import org.apache.flink.api.common.functions.MapFunction;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.api.java.tuple.Tuple3;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.table.api.TableEnvironment;
+import org.apache.flink.table.api.java.StreamTableEnvironment;
+import org.apache.flink.table.functions.AggregateFunction;
+import org.apache.flink.types.Row;
+import org.apache.flink.util.Collector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * The reader's aggregations as SQL over the play stream, an alternative to the hand-wired DataStream operators in
+ * {@link SongPlayReader} that writes the same results to the same sinks.
+ * <p>
+ * Plays are registered as the table {@code plays (playerId, songId, artistId, playTime)}, where {@code playTime} is
+ * the event time or processing time attribute, and {@code APPROX_DISTINCT} counts distinct values with a
+ * {@link HyperLogLog}. Running counts are a continuous GROUP BY whose updates arrive as a retract stream; only the new
+ * values are written, since the sinks upsert by artist. Windowed counts are GROUP BY TUMBLE or HOP windows and are
+ * ranked by {@link TopArtists} like the DataStream results.
+ * <p>
+ * The Flink 1.7 planner has no mini-batch or local-global aggregation. With pre-aggregation enabled the running counts
+ * instead sum the partial counts of {@link LocalArtistCombiner}, registered as {@code artist_plays (artistId, plays)},
+ * which is the same two-phase plan with the combiner's flush thresholds as the mini-batch size.
+ */
+public class SqlPipeline {
+    private static final Logger log = LoggerFactory.getLogger(SqlPipeline.class);
+
+    static final String RUNNING_COUNTS =
+            "SELECT artistId, COUNT(*) AS plays FROM plays GROUP BY artistId";
+    static final String RUNNING_COUNTS_PRE_AGGREGATED =
+            "SELECT artistId, SUM(plays) AS plays FROM artist_plays GROUP BY artistId";
+    // %1$s is TUMBLE or HOP, %2$s the window arguments after the time attribute, %3$s the optional rowtime column
+    static final String WINDOW_COUNTS =
+            "SELECT artistId, %1$s_END(playTime, %2$s) AS windowEnd, COUNT(*) AS plays, " +
+                    "APPROX_DISTINCT(playerId) AS listeners%3$s " +
+                    "FROM plays GROUP BY artistId, %1$s(playTime, %2$s)";
+
+    /**
+     * Adds the SQL version of the running counts or top artists to the job, and the optional ad-hoc query, whose
+     * results are printed.
+     */
+    static void addAggregations(DataStream<PlayEvent> plays, SongPlayReader.Config config, Catalog catalog,
+                                SongPlayReader.ResultSinks sinks) {
+        StreamTableEnvironment tableEnv = TableEnvironment.getTableEnvironment(plays.getExecutionEnvironment());
+        // play events have their own serializer rather than a composite type, so the table is made of their IDs
+        DataStream<Tuple3<Integer, Integer, Integer>> playIds = SongPlayReader.withParallelism(plays
+                .map(new PlayIds())
+                .name("play-ids"), config.getParseParallelism());
+        tableEnv.registerDataStream("plays", playIds,
+                "playerId, songId, artistId, playTime." + (config.isEventTime() ? "rowtime" : "proctime"));
+        tableEnv.registerFunction("APPROX_DISTINCT", new ApproxDistinct());
+
+        if (config.getWindowType() != null) {
+            DataStream<ArtistWindowCount> counts = tableEnv
+                    .toAppendStream(tableEnv.sqlQuery(windowQuery(config)), Row.class)
+                    .map(new RowToArtistWindowCount())
+                    .name("artist-counts")
+                    .uid("sql-artist-counts");
+            SongPlayReader.addRanking(counts, config, catalog, sinks);
+        } else {
+            String query = RUNNING_COUNTS;
+            if (config.isPreAggregate()) {
+                tableEnv.registerDataStream("artist_plays", SongPlayReader.withParallelism(plays
+                        .transform("pre-aggregate", LocalArtistCombiner.TYPE, new LocalArtistCombiner(
+                                config.getPreAggregateEvents(), config.getPreAggregateMillis(),
+                                config.getPreAggregateKeys()))
+                        .uid("pre-aggregate"), config.getParseParallelism()), "artistId, plays");
+                query = RUNNING_COUNTS_PRE_AGGREGATED;
+            }
+            log.info("running counts query: {}", query);
+            DataStream<Tuple2<Integer, Integer>> counts = tableEnv
+                    .toRetractStream(tableEnv.sqlQuery(query), Row.class)
+                    .flatMap(new UpsertArtistCount())
+                    .name("running-counts")
+                    .uid("sql-running-counts");
+            SongPlayReader.addRunningCountSinks(counts, config, catalog, sinks);
+        }
+
+        if (config.getSqlQuery() != null) {
+            log.info("ad-hoc query: {}", config.getSqlQuery());
+            tableEnv.toRetractStream(tableEnv.sqlQuery(config.getSqlQuery()), Row.class)
+                    .printToErr()
+                    .name("ad-hoc query");
+        }
+    }
+
+    static String windowQuery(SongPlayReader.Config config) {
+        boolean sliding = config.getWindowType() == SongPlayReader.WindowType.SLIDING;
+        String function = sliding ? "HOP" : "TUMBLE";
+        String window = sliding
+                ? interval(config.getWindowSlide()) + ", " + interval(config.getWindowSize())
+                : interval(config.getWindowSize());
+        // in event time, the window's rowtime makes the result rows timestamped
+        String rowtime = config.isEventTime() ? String.format(", %s_ROWTIME(playTime, %s) AS rowtime", function, window) : "";
+        String query = String.format(WINDOW_COUNTS, function, window, rowtime);
+        log.info("window counts query: {}", query);
+        return query;
+    }
+
+    // a SECOND interval literal only takes two digits, so longer intervals are written as days to seconds
+    static String interval(long seconds) {
+        return String.format("INTERVAL '%d %02d:%02d:%02d' DAY TO SECOND",
+                seconds / 86400, seconds / 3600 % 24, seconds / 60 % 60, seconds % 60);
+    }
+
+    /**
+     * (playerId, songId, artistId) of a play. The output tuple is reused, since the table scan reads its fields into a
+     * row right away.
+     */
+    public static class PlayIds implements MapFunction<PlayEvent, Tuple3<Integer, Integer, Integer>> {
+        private transient Tuple3<Integer, Integer, Integer> result;
+
+        @Override
+        public Tuple3<Integer, Integer, Integer> map(PlayEvent event) {
+            if (result == null) result = new Tuple3<>();
+            result.f0 = event.playerId;
+            result.f1 = event.songId;
+            result.f2 = event.artistId;
+            return result;
+        }
+    }
+
+    /**
+     * Keeps the new count of each update of the running counts and drops the retraction of the old one, which the
+     * upserting sinks overwrite anyway.
+     */
+    public static class UpsertArtistCount implements FlatMapFunction<Tuple2<Boolean, Row>, Tuple2<Integer, Integer>> {
+        @Override
+        public void flatMap(Tuple2<Boolean, Row> change, Collector<Tuple2<Integer, Integer>> out) {
+            if (change.f0) {
+                Row row = change.f1;
+                out.collect(new Tuple2<>((Integer) row.getField(0), ((Number) row.getField(1)).intValue()));
+            }
+        }
+    }
+
+    /**
+     * Converts a (artistId, windowEnd, plays, listeners[, rowtime]) result row. In event time the rowtime field makes
+     * the window's last millisecond the record timestamp, which the ranking windows rely on.
+     */
+    public static class RowToArtistWindowCount implements MapFunction<Row, ArtistWindowCount> {
+        @Override
+        public ArtistWindowCount map(Row row) {
+            return new ArtistWindowCount((Integer) row.getField(0), toMillis((Timestamp) row.getField(1)),
+                    (Long) row.getField(2), (Long) row.getField(3));
+        }
+
+        // the planner shifts time values by the local time zone offset when it converts them to Timestamps
+        private static long toMillis(Timestamp timestamp) {
+            long time = timestamp.getTime();
+            return time + TimeZone.getDefault().getOffset(time);
+        }
+    }
+
+    /**
+     * APPROX_DISTINCT(value): the approximate number of distinct non-null values, within the error of a
+     * {@link HyperLogLog} at its default precision, in fixed state per group.
+     */
+    public static class ApproxDistinct extends AggregateFunction<Long, HyperLogLog> {
+        @Override
+        public HyperLogLog createAccumulator() {
+            return new HyperLogLog();
+        }
+
+        @Override
+        public Long getValue(HyperLogLog sketch) {
+            return sketch.estimate();
+        }
+
+        public void accumulate(HyperLogLog sketch, Integer value) {
+            if (value != null) sketch.add(value);
+        }
+
+        public void merge(HyperLogLog sketch, Iterable<HyperLogLog> others) {
+            for (HyperLogLog other : others) sketch.merge(other);
+        }
+
+        public void resetAccumulator(HyperLogLog sketch) {
+            Arrays.fill(sketch.registers, (byte) 0);
+        }
+    }
+}
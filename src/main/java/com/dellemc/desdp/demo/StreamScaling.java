@@ -0,0 +1,31 @@
+package com.dellemc.desdp.demo;
+
+import io.pravega.client.stream.ScalingPolicy;
+
+/**
+ * Scaling policies the generator can create its streams with. The target rate is per segment: events per second for
+ * {@link #EVENT_RATE}, kilobytes per second for {@link #DATA_RATE}, and unused for {@link #FIXED}, which keeps the
+ * minimum number of segments.
+ */
+public enum StreamScaling {
+    FIXED {
+        @Override
+        ScalingPolicy createPolicy(int targetRate, int scaleFactor, int minSegments) {
+            return ScalingPolicy.fixed(minSegments);
+        }
+    },
+    EVENT_RATE {
+        @Override
+        ScalingPolicy createPolicy(int targetRate, int scaleFactor, int minSegments) {
+            return ScalingPolicy.byEventRate(targetRate, scaleFactor, minSegments);
+        }
+    },
+    DATA_RATE {
+        @Override
+        ScalingPolicy createPolicy(int targetRate, int scaleFactor, int minSegments) {
+            return ScalingPolicy.byDataRate(targetRate, scaleFactor, minSegments);
+        }
+    };
+
+    abstract ScalingPolicy createPolicy(int targetRate, int scaleFactor, int minSegments);
+}
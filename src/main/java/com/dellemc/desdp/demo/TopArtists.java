@@ -0,0 +1,75 @@
+package com.dellemc.desdp.demo;
+
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.OutputTag;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Ranks the per-artist counts of each window and emits the top N. The counts arrive pre-aggregated (one record per
+ * artist per window), so this is the only non-parallel step and it sees O(artists) records per window, not O(events).
+ * Only ranks whose artist or counts changed since the previous ranking are emitted; when any did, the complete ranking
+ * is also emitted to {@link #RANKINGS}, for consumers that must never show some ranks updated and others not.
+ * <p>
+ * With allowed lateness a window's per-artist results are re-emitted as late plays update them; counts only grow, so
+ * the largest one of each artist is kept, and the window is ranked again (see {@link WindowRanking}).
+ */
+public class TopArtists extends WindowRanking<ArtistWindowCount, ArtistWindowCount> {
+    static final OutputTag<ArtistWindowCount[]> RANKINGS = new OutputTag<ArtistWindowCount[]>("artist-rankings") {};
+
+    private static final Comparator<ArtistWindowCount> BY_COUNT_DESC =
+            Comparator.comparingLong((ArtistWindowCount c) -> c.count).reversed().thenComparingInt(c -> c.artistId);
+
+    private int topN;
+    // previously emitted ranking; not checkpointed, so after a restore the first ranking is emitted in full
+    private transient ArtistWindowCount[] lastTop;
+
+    public TopArtists(int topN, boolean eventTime, long lateness) {
+        super(ArtistWindowCount.class, eventTime, lateness);
+        this.topN = topN;
+    }
+
+    @Override
+    int part(ArtistWindowCount count) {
+        return count.artistId;
+    }
+
+    @Override
+    long size(ArtistWindowCount count) {
+        return count.count;
+    }
+
+    @Override
+    void rank(long windowEnd, Iterable<ArtistWindowCount> counts, Context ctx, Collector<ArtistWindowCount> out) {
+        List<ArtistWindowCount> windowCounts = new ArrayList<>();
+        counts.forEach(windowCounts::add);
+        windowCounts.sort(BY_COUNT_DESC);
+        if (lastTop == null) lastTop = new ArtistWindowCount[topN];
+
+        boolean changed = false;
+        for (int i = 0; i < topN; i++) {
+            ArtistWindowCount current = i < windowCounts.size() ? windowCounts.get(i) : null;
+            ArtistWindowCount last = lastTop[i];
+            if (current == null) {
+                changed |= last != null;
+                lastTop[i] = null;
+                continue;
+            }
+            // the counts stay in the ranking's state, which ranks them again on late updates, so rank and keep a copy
+            // rather than changing them
+            ArtistWindowCount ranked = new ArtistWindowCount(current.artistId, current.windowEnd, current.count,
+                    current.listeners);
+            ranked.rank = i + 1;
+            if (last == null || last.artistId != ranked.artistId || last.count != ranked.count
+                    || last.listeners != ranked.listeners) {
+                out.collect(ranked);
+                changed = true;
+            }
+            lastTop[i] = ranked;
+        }
+        if (changed) ctx.output(RANKINGS, Arrays.copyOf(lastTop, Math.min(topN, windowCounts.size())));
+    }
+}
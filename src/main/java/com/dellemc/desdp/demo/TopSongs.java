@@ -0,0 +1,76 @@
+package com.dellemc.desdp.demo;
+
+import org.apache.flink.util.Collector;
+import org.apache.flink.util.OutputTag;
+
+/**
+ * Merges the {@link HeavyHitters} of all song buckets for each window and emits the top N songs with their estimated
+ * counts and error bound. Each bucket sends one sketch per window, so this non-parallel step sees O(buckets) records
+ * per window however many songs were played. A window is ranked as soon as the sketches of all buckets have arrived,
+ * or when {@link WindowRanking} would rank it otherwise, e.g. when a bucket had no plays. Each ranking is emitted rank by
+ * rank, and also as a whole to {@link #RANKINGS}.
+ * <p>
+ * Songs are partitioned over the buckets, so each bucket's candidates hold every play of their songs and the merged
+ * candidates contain the global top N unless a bucket had more close contenders than it keeps. With allowed lateness
+ * a bucket re-emits a window's sketch as late plays update it; sketches only grow, so the largest one is kept, and the
+ * window is ranked again from the sketches of all buckets.
+ */
+public class TopSongs extends WindowRanking<HeavyHitters, SongWindowCount> {
+    static final OutputTag<SongWindowCount[]> RANKINGS = new OutputTag<SongWindowCount[]>("song-rankings") {};
+
+    private int topN;
+    private int buckets;
+    private int capacity;
+    private int width;
+    private int depth;
+
+    public TopSongs(int topN, int buckets, int capacity, int width, int depth, boolean eventTime, long lateness) {
+        super(HeavyHitters.class, eventTime, lateness);
+        this.topN = topN;
+        this.buckets = buckets;
+        this.capacity = capacity;
+        this.width = width;
+        this.depth = depth;
+    }
+
+    @Override
+    int part(HeavyHitters partial) {
+        return partial.bucket;
+    }
+
+    @Override
+    long size(HeavyHitters partial) {
+        return partial.sketch.total;
+    }
+
+    @Override
+    int expectedParts() {
+        return buckets;
+    }
+
+    @Override
+    void rank(long windowEnd, Iterable<HeavyHitters> partials, Context ctx, Collector<SongWindowCount> out) {
+        HeavyHitters merged = new HeavyHitters(capacity, width, depth);
+        for (HeavyHitters partial : partials) {
+            merged.merge(partial);
+        }
+
+        // the heap keeps the smallest candidate first, so rank by taking the largest remaining each time
+        long error = merged.sketch.errorBound();
+        boolean[] ranked = new boolean[merged.size];
+        SongWindowCount[] ranking = new SongWindowCount[Math.min(topN, merged.size)];
+        for (int rank = 1; rank <= Math.min(topN, merged.size); rank++) {
+            int best = -1;
+            for (int i = 0; i < merged.size; i++) {
+                if (!ranked[i] && (best < 0 || merged.counts[i] > merged.counts[best]
+                        || merged.counts[i] == merged.counts[best] && merged.keys[i] < merged.keys[best])) {
+                    best = i;
+                }
+            }
+            ranked[best] = true;
+            ranking[rank - 1] = new SongWindowCount(merged.keys[best], windowEnd, merged.counts[best], error, rank);
+            out.collect(ranking[rank - 1]);
+        }
+        ctx.output(RANKINGS, ranking);
+    }
+}
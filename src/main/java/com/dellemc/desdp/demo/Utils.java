@@ -3,16 +3,24 @@ package com.dellemc.desdp.demo;
 import io.pravega.client.ClientConfig;
 import io.pravega.client.admin.StreamManager;
 import io.pravega.client.stream.ScalingPolicy;
+import io.pravega.client.stream.Stream;
 import io.pravega.client.stream.StreamConfiguration;
+import io.pravega.client.stream.StreamCut;
 import io.pravega.keycloak.client.PravegaKeycloakCredentials;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.net.URI;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
 public class Utils {
     private static Logger log = LoggerFactory.getLogger(SongPlayGenerator.class);
     private static Config config;
+    static final String HEAD = "head";
+    static final String TAIL = "tail";
     //private Config config;
 
     
@@ -29,18 +37,53 @@ public class Utils {
         return builder.build();
     }
 
-    static void createStream(ClientConfig clientConfig) {
+    /**
+     * Creates the given streams, and their scopes unless running on Streaming Data Platform, where scopes are
+     * created through the platform. Streams that already exist keep their configuration.
+     */
+    static void createStreams(ClientConfig clientConfig, Collection<Stream> streams, ScalingPolicy scalingPolicy) {
         try (StreamManager streamManager = StreamManager.create(clientConfig)) {
-
-            // create the scope
-            if (!config.isUseKeycloak()) // can't create a scope in SDP
-                streamManager.createScope(config.getScope());
-
-            // create the stream
             StreamConfiguration streamConfiguration = StreamConfiguration.builder()
-                    .scalingPolicy(ScalingPolicy.byEventRate(3, 2, 1))
+                    .scalingPolicy(scalingPolicy)
                     .build();
-            streamManager.createStream(config.getScope(), config.getStream(), streamConfiguration);
+            Set<String> scopes = new HashSet<>();
+            for (Stream stream : streams) {
+                // create the scope
+                if (!config.isUseKeycloak() && scopes.add(stream.getScope())) // can't create a scope in SDP
+                    streamManager.createScope(stream.getScope());
+
+                // create the stream
+                if (!streamManager.createStream(stream.getScope(), stream.getStreamName(), streamConfiguration))
+                    log.info("stream {} already exists, its scaling policy is not changed", stream.getScopedName());
+            }
+        }
+    }
+
+
+
+    /**
+     * Resolves a position in {@code stream}: {@link #HEAD}, {@link #TAIL} as of now, or a stream cut in the text form
+     * of {@link StreamCut#asText()}.
+     */
+    static StreamCut streamCut(ClientConfig clientConfig, Stream stream, String position) {
+        if (HEAD.equals(position)) return StreamCut.UNBOUNDED;
+        if (TAIL.equals(position)) {
+            try (StreamManager streamManager = StreamManager.create(clientConfig)) {
+                return streamManager.getStreamInfo(stream.getScope(), stream.getStreamName()).getTailStreamCut();
+            }
+        }
+        return StreamCut.from(position);
+    }
+
+    /**
+     * Checks that {@code position} is one {@link #streamCut} accepts, without contacting Pravega.
+     */
+    static void validatePosition(String position) {
+        if (position == null || HEAD.equals(position) || TAIL.equals(position)) return;
+        try {
+            StreamCut.from(position);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("position must be head, tail or a stream cut, not " + position, e);
         }
     }
 
@@ -52,6 +95,7 @@ public class Utils {
         String scope;
         String stream;
         boolean useKeycloak;
+        String catalogFile; // null means the bundled songs.lst
 
         public Config() {
         }
@@ -100,6 +144,16 @@ public class Utils {
             this.useKeycloak = useKeycloak;
         }
 
+        public String getCatalogFile() {
+            return catalogFile;
+        }
+
+        public void setCatalogFile(String catalogFile) {
+            if (catalogFile != null && !new File(catalogFile).isFile())
+                throw new IllegalArgumentException("catalog file " + catalogFile + " does not exist");
+            this.catalogFile = catalogFile;
+        }
+
         @Override
         public String toString() {
             return "Config{" +
@@ -107,6 +161,7 @@ public class Utils {
                     ", scope='" + scope + '\'' +
                     ", stream='" + stream + '\'' +
                     ", useKeycloak=" + useKeycloak +
+                    ", catalogFile=" + catalogFile +
                     '}';
         }
     }
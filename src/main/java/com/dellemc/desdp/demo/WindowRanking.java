@@ -0,0 +1,139 @@
+package com.dellemc.desdp.demo;
+
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.TimerService;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+
+/**
+ * Ranks the results of each aggregation window once they have all arrived. The results are keyed by the end of their
+ * window, and the newest result of each part of a window (an artist, or a bucket of songs) is kept in keyed state, so
+ * a window is always ranked from all of its results however they were spread over the aggregation subtasks. A window
+ * is ranked:
+ * <ul>
+ * <li>in event time, when the watermark passes the window's last millisecond; every aggregation subtask fires the
+ * window before it forwards that watermark, so all of its results have arrived by then</li>
+ * <li>in processing time, {@link #PROCESSING_TIME_DELAY} ms after the window ends, which gives the results of all
+ * aggregation subtasks time to arrive</li>
+ * <li>as soon as results for all parts have arrived, when the number of parts is known</li>
+ * </ul>
+ * A result that arrives after its window was ranked (an update within the allowed lateness, or a straggler in
+ * processing time) re-ranks the window from all of its results. The state of a window is cleared once no more results
+ * can arrive for it. Runs with parallelism 1, and a window that would be ranked after a newer window has been ranked is
+ * ignored, so the written ranking never goes back in time.
+ */
+public abstract class WindowRanking<T, R> extends KeyedProcessFunction<Long, T, R> {
+    static final long PROCESSING_TIME_DELAY = 1000;
+
+    private Class<T> type;
+    private boolean eventTime;
+    private long lateness;
+    private transient MapState<Integer, T> results; // newest result by part of the window
+    private transient ValueState<Boolean> ranked;
+    private transient long lastWindowEnd; // end of the newest window ranked so far
+    private transient LatencyHistogram rankingDelay;
+
+    WindowRanking(Class<T> type, boolean eventTime, long lateness) {
+        this.type = type;
+        this.eventTime = eventTime;
+        this.lateness = lateness;
+    }
+
+    /**
+     * @return the part of its window a result covers
+     */
+    abstract int part(T result);
+
+    /**
+     * @return how much a result has counted; a newer result for the same part never counts less
+     */
+    abstract long size(T result);
+
+    /**
+     * @return how many parts each window has, or 0 if that is not known
+     */
+    int expectedParts() {
+        return 0;
+    }
+
+    /**
+     * Emits the ranking of the window ending at {@code windowEnd}, given the newest result of each of its parts, to
+     * {@code out} and the complete ranking to a side output of {@code ctx}.
+     */
+    abstract void rank(long windowEnd, Iterable<T> results, Context ctx, Collector<R> out) throws Exception;
+
+    @Override
+    public void open(Configuration parameters) {
+        results = getRuntimeContext().getMapState(new MapStateDescriptor<>("results", Types.INT, TypeInformation.of(type)));
+        ranked = getRuntimeContext().getState(new ValueStateDescriptor<>("ranked", Types.BOOLEAN));
+        // how long after a window closed (by the clock) its ranking is produced
+        rankingDelay = getRuntimeContext().getMetricGroup().histogram("rankingDelayMillis", new LatencyHistogram());
+    }
+
+    @Override
+    public void processElement(T result, Context ctx, Collector<R> out) throws Exception {
+        long windowEnd = ctx.getCurrentKey();
+        TimerService timers = ctx.timerService();
+        // only a processing-time straggler can be this late; its window's results are gone, so it can't be ranked
+        if ((eventTime ? timers.currentWatermark() : timers.currentProcessingTime()) >= cleanupTime(windowEnd)) return;
+
+        T previous = results.get(part(result));
+        if (previous != null && size(previous) > size(result)) return;
+        // results arrive through a keyBy, so they were deserialized for this operator and can be kept without a copy
+        results.put(part(result), result);
+
+        if (ranked.value() != null) {
+            rankWindow(windowEnd, ctx, out);
+            return;
+        }
+        if (eventTime) {
+            timers.registerEventTimeTimer(rankTime(windowEnd));
+            timers.registerEventTimeTimer(cleanupTime(windowEnd));
+        } else {
+            timers.registerProcessingTimeTimer(rankTime(windowEnd));
+            timers.registerProcessingTimeTimer(cleanupTime(windowEnd));
+        }
+        if (expectedParts() > 0 && count(results.keys()) >= expectedParts()) rankWindow(windowEnd, ctx, out);
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<R> out) throws Exception {
+        long windowEnd = ctx.getCurrentKey();
+        if (timestamp == rankTime(windowEnd) && ranked.value() == null) rankWindow(windowEnd, ctx, out);
+        if (timestamp == cleanupTime(windowEnd)) {
+            results.clear();
+            ranked.clear();
+        }
+    }
+
+    private void rankWindow(long windowEnd, Context ctx, Collector<R> out) throws Exception {
+        if (ranked.value() == null) {
+            ranked.update(true);
+            rankingDelay.update(System.currentTimeMillis() - windowEnd);
+        }
+        if (windowEnd < lastWindowEnd) return;
+        lastWindowEnd = windowEnd;
+        rank(windowEnd, results.values(), ctx, out);
+    }
+
+    // results are timestamped with the last millisecond of their window
+    private long rankTime(long windowEnd) {
+        return windowEnd - 1 + (eventTime ? 0 : PROCESSING_TIME_DELAY);
+    }
+
+    private long cleanupTime(long windowEnd) {
+        return rankTime(windowEnd) + (eventTime ? lateness : PROCESSING_TIME_DELAY);
+    }
+
+    private static int count(Iterable<?> values) {
+        int count = 0;
+        for (Object ignored : values) count++;
+        return count;
+    }
+}
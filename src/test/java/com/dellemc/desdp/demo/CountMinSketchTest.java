@@ -0,0 +1,61 @@
+package com.dellemc.desdp.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountMinSketchTest {
+    private static final int KEYS = 10_000;
+    private static final int EVENTS = 500_000;
+
+    @Test
+    void neverUnderestimatesAndStaysWithinErrorBound() {
+        CountMinSketch sketch = new CountMinSketch(256, 4);
+        long[] exact = new long[KEYS];
+        KeySampler sampler = KeySampler.create("zipf:1.1", KEYS);
+        Random random = new Random(42);
+        for (int i = 0; i < EVENTS; i++) {
+            int key = sampler.next(random);
+            exact[key]++;
+            assertTrue(sketch.add(key) >= exact[key]);
+        }
+        assertEquals(EVENTS, sketch.total);
+        assertEquals((long) Math.ceil(Math.E / 256 * EVENTS), sketch.errorBound());
+
+        int outsideBound = 0;
+        for (int key = 0; key < KEYS; key++) {
+            long estimate = sketch.estimate(key);
+            assertTrue(estimate >= exact[key], "key " + key + " estimated " + estimate + ", counted " + exact[key]);
+            if (estimate - exact[key] > sketch.errorBound()) outsideBound++;
+        }
+        // each key exceeds the bound with probability at most 1 - confidence (1.8% at depth 4)
+        assertTrue(outsideBound <= KEYS * (1 - sketch.getConfidence()), outsideBound + " keys outside the bound");
+    }
+
+    @Test
+    void mergeEqualsSketchOfBothStreams() {
+        CountMinSketch left = new CountMinSketch(256, 4), right = new CountMinSketch(256, 4);
+        CountMinSketch all = new CountMinSketch(256, 4);
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            int key = random.nextInt(KEYS);
+            (i % 2 == 0 ? left : right).add(key);
+            all.add(key);
+        }
+        left.merge(right);
+        assertArrayEquals(all.counters, left.counters);
+        assertEquals(all.total, left.total);
+    }
+
+    @Test
+    void rejectsInvalidDimensions() {
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(1000, 4));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(1024, 0));
+        assertThrows(IllegalArgumentException.class, () -> new CountMinSketch(1024, 4).merge(new CountMinSketch(512, 4)));
+    }
+}
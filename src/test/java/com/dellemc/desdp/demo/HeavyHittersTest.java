@@ -0,0 +1,77 @@
+package com.dellemc.desdp.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeavyHittersTest {
+    private static final int KEYS = 20_000;
+    private static final int TOP = 10;
+
+    @Test
+    void keepsMostFrequentKeysOfSkewedStream() {
+        HeavyHitters heavyHitters = new HeavyHitters(2 * TOP, 1024, 4);
+        long[] exact = new long[KEYS];
+        // key 0 is the most popular; scramble the IDs so the top keys are not simply the smallest ones
+        KeySampler sampler = KeySampler.create("zipf:1.1", KEYS);
+        Random random = new Random(42);
+        for (int i = 0; i < 300_000; i++) {
+            int key = scramble(sampler.next(random));
+            exact[key]++;
+            heavyHitters.add(key);
+        }
+
+        assertEquals(2 * TOP, heavyHitters.size);
+        Set<Integer> candidates = Arrays.stream(heavyHitters.keys).boxed().collect(Collectors.toSet());
+        for (int key : topKeys(exact)) {
+            assertTrue(candidates.contains(key), "top key " + key + " counted " + exact[key] + " is not a candidate");
+        }
+        for (int i = 0; i < heavyHitters.size; i++) {
+            assertTrue(heavyHitters.counts[i] >= exact[heavyHitters.keys[i]]);
+        }
+    }
+
+    @Test
+    void mergeKeepsMostFrequentKeysOfBothStreams() {
+        HeavyHitters left = new HeavyHitters(2 * TOP, 1024, 4), right = new HeavyHitters(2 * TOP, 1024, 4);
+        long[] exact = new long[KEYS];
+        KeySampler sampler = KeySampler.create("zipf:1.1", KEYS);
+        Random random = new Random(7);
+        for (int i = 0; i < 300_000; i++) {
+            // each side sees a different half of the hot keys most often
+            int rank = sampler.next(random);
+            int key = scramble(i % 2 == 0 ? rank : (rank + TOP / 2) % KEYS);
+            exact[key]++;
+            (i % 2 == 0 ? left : right).add(key);
+        }
+        left.merge(right);
+
+        Set<Integer> candidates = Arrays.stream(left.keys, 0, left.size).boxed().collect(Collectors.toSet());
+        for (int key : topKeys(exact)) {
+            assertTrue(candidates.contains(key), "top key " + key + " counted " + exact[key] + " is not a candidate");
+        }
+        for (int i = 0; i < left.size; i++) {
+            assertEquals(left.sketch.estimate(left.keys[i]), left.counts[i]);
+        }
+    }
+
+    private static int[] topKeys(long[] exact) {
+        return IntStream.range(0, exact.length).boxed()
+                .sorted((a, b) -> Long.compare(exact[b], exact[a]))
+                .limit(TOP)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    // a bijection on [0, KEYS), since 7919 is prime and does not divide it
+    private static int scramble(int key) {
+        return (int) ((key * 7919L + 13) % KEYS);
+    }
+}
@@ -0,0 +1,62 @@
+package com.dellemc.desdp.demo;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    @Test
+    void estimatesWithinThreeStandardErrors() {
+        double standardError = 1.04 / Math.sqrt(1 << HyperLogLog.DEFAULT_PRECISION);
+        for (int cardinality : new int[]{100, 1_000, 10_000, 100_000, 1_000_000}) {
+            HyperLogLog sketch = new HyperLogLog();
+            for (int i = 0; i < cardinality; i++) {
+                sketch.add(i);
+            }
+            double error = Math.abs(sketch.estimate() - cardinality) / (double) cardinality;
+            assertTrue(error <= 3 * standardError,
+                    "estimate " + sketch.estimate() + " for " + cardinality + " distinct values");
+        }
+    }
+
+    @Test
+    void ignoresDuplicates() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int repeat = 0; repeat < 10; repeat++) {
+            for (int i = 0; i < 5_000; i++) {
+                sketch.add(i);
+            }
+        }
+        assertTrue(Math.abs(sketch.estimate() - 5_000) <= 5_000 * 0.05, "estimate " + sketch.estimate());
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnion() {
+        HyperLogLog left = new HyperLogLog(), right = new HyperLogLog(), all = new HyperLogLog();
+        for (int i = 0; i < 60_000; i++) {
+            // overlapping halves: [0, 40000) and [20000, 60000)
+            if (i < 40_000) left.add(i);
+            if (i >= 20_000) right.add(i);
+            all.add(i);
+        }
+        left.merge(right);
+        assertArrayEquals(all.registers, left.registers);
+        assertEquals(all.estimate(), left.estimate());
+    }
+
+    @Test
+    void emptySketchEstimatesZero() {
+        assertEquals(0, new HyperLogLog().estimate());
+    }
+
+    @Test
+    void rejectsMismatchedPrecision() {
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(12).merge(new HyperLogLog(10)));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(3));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(17));
+    }
+}
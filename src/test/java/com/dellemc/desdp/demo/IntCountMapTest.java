@@ -0,0 +1,73 @@
+package com.dellemc.desdp.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntCountMapTest {
+
+    @Test
+    void accumulatesCountsPerKey() {
+        IntCountMap map = new IntCountMap(1000);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            // keys that collide in the low bits, plus a few large ones
+            int key = i % 10 == 0 ? Integer.MAX_VALUE - random.nextInt(10) : random.nextInt(900) * 1024;
+            int delta = 1 + random.nextInt(3);
+            map.add(key, delta);
+            expected.merge(key, delta, Integer::sum);
+        }
+        assertEquals(expected, toMap(map));
+        assertEquals(expected.size(), map.size());
+    }
+
+    @Test
+    void isFullAtMaxSize() {
+        IntCountMap map = new IntCountMap(3);
+        assertTrue(map.isEmpty());
+        map.add(0, 1);
+        map.add(1, 1);
+        assertFalse(map.isFull());
+        map.add(2, 1);
+        assertTrue(map.isFull());
+        // existing keys can still be counted once full, new ones cannot
+        map.add(1, 5);
+        assertEquals(6, toMap(map).get(1).intValue());
+        assertThrows(IllegalStateException.class, () -> map.add(3, 1));
+    }
+
+    @Test
+    void clearEmptiesAllSlots() {
+        IntCountMap map = new IntCountMap(100);
+        for (int key = 0; key < 100; key++) {
+            map.add(key, key);
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertTrue(toMap(map).isEmpty());
+        map.add(7, 1);
+        assertEquals(1, toMap(map).get(7).intValue());
+    }
+
+    @Test
+    void rejectsNegativeKeys() {
+        assertThrows(IllegalArgumentException.class, () -> new IntCountMap(10).add(-1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new IntCountMap(0));
+    }
+
+    private static Map<Integer, Integer> toMap(IntCountMap map) {
+        Map<Integer, Integer> result = new HashMap<>();
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            if (map.isUsed(slot)) result.put(map.keyAt(slot), map.valueAt(slot));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+package com.dellemc.desdp.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeySamplerTest {
+    private static final int DRAWS = 1_000_000;
+
+    @Test
+    void aliasTableDrawsInProportionToWeights() {
+        // uneven weights, including a zero one and one holding most of the mass
+        double[] weights = {1, 0, 3, 0.5, 20, 2, 2, 0.25};
+        assertFrequencies(new KeySampler.AliasSampler(weights), weights);
+    }
+
+    @Test
+    void zipfDrawsRankInProportionToPowerLaw() {
+        int size = 1000;
+        double[] weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            weights[i] = 1 / Math.pow(i + 1, 1.2);
+        }
+        assertFrequencies(KeySampler.create("zipf:1.2", size), weights);
+    }
+
+    @Test
+    void hotSetDrawsHotPercentFromHotFraction() {
+        int size = 1000;
+        double[] weights = new double[size];
+        for (int i = 0; i < size; i++) {
+            // 90% of draws over the first 100 keys, 10% over the other 900
+            weights[i] = i < 100 ? 0.9 / 100 : 0.1 / 900;
+        }
+        assertFrequencies(KeySampler.create("hotset:0.1:90", size), weights);
+    }
+
+    @Test
+    void uniformDrawsEveryKeyEqually() {
+        double[] weights = new double[100];
+        Arrays.fill(weights, 1);
+        assertFrequencies(KeySampler.create("uniform", 100), weights);
+    }
+
+    @Test
+    void rejectsInvalidSpecs() {
+        assertThrows(IllegalArgumentException.class, () -> KeySampler.create("zipf", 10));
+        assertThrows(IllegalArgumentException.class, () -> KeySampler.create("zipf:0", 10));
+        assertThrows(IllegalArgumentException.class, () -> KeySampler.create("hotset:1.5:90", 10));
+        assertThrows(IllegalArgumentException.class, () -> KeySampler.create("hotset:0.1:120", 10));
+        assertThrows(IllegalArgumentException.class, () -> KeySampler.create("normal", 10));
+        assertThrows(IllegalArgumentException.class, () -> KeySampler.create("uniform", 0));
+    }
+
+    /**
+     * Checks that every key is drawn within 5 standard deviations of its expected count.
+     */
+    private static void assertFrequencies(KeySampler sampler, double[] weights) {
+        long[] counts = new long[weights.length];
+        Random random = new Random(42);
+        for (int i = 0; i < DRAWS; i++) {
+            counts[sampler.next(random)]++;
+        }
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        for (int key = 0; key < weights.length; key++) {
+            double p = weights[key] / total;
+            double expected = DRAWS * p;
+            double tolerance = 5 * Math.sqrt(DRAWS * p * (1 - p)) + 1;
+            if (p == 0) assertEquals(0, counts[key], "key " + key + " has no weight");
+            assertTrue(Math.abs(counts[key] - expected) <= tolerance,
+                    "key " + key + " drawn " + counts[key] + " times, expected " + Math.round(expected));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.dellemc.desdp.demo;
+
+import org.apache.flink.api.common.typeutils.TypeSerializer;
+import org.apache.flink.api.common.typeutils.TypeSerializerSchemaCompatibility;
+import org.apache.flink.api.common.typeutils.TypeSerializerSnapshot;
+import org.apache.flink.core.memory.DataInputDeserializer;
+import org.apache.flink.core.memory.DataOutputSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlayEventSerializerTest {
+    private final PlayEventSerializer serializer = PlayEventSerializer.INSTANCE;
+
+    @Test
+    void roundTripsValidEvents() throws IOException {
+        assertRoundTrip(new PlayEvent(0, 0, 0, 0));
+        assertRoundTrip(new PlayEvent(127, 128, 16383, 1546300800000L));
+        assertRoundTrip(new PlayEvent(16384, 1 << 21, 1 << 28, Long.MAX_VALUE));
+        assertRoundTrip(new PlayEvent(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MIN_VALUE));
+        // IDs are never negative, but a negative value still takes the full five bytes rather than being corrupted
+        assertRoundTrip(new PlayEvent(-1, Integer.MIN_VALUE, -128, -1));
+    }
+
+    @Test
+    void roundTripsMalformedEvents() throws IOException {
+        assertRoundTrip(PlayEvent.malformed(""));
+        assertRoundTrip(PlayEvent.malformed("{\"player_id\": \"not a number\"}"));
+    }
+
+    @Test
+    void encodesSmallIdsCompactly() throws IOException {
+        // flag byte, one byte per ID under 128, two under 16384, and the timestamp
+        assertEquals(1 + 3 + 8, serialize(new PlayEvent(0, 0, 0, 0)).length);
+        assertEquals(1 + 1 + 2 + 2 + 8, serialize(new PlayEvent(127, 128, 16383, 0)).length);
+        assertEquals(1 + 5 + 5 + 1 + 8, serialize(new PlayEvent(Integer.MAX_VALUE, -1, 0, 0)).length);
+    }
+
+    @Test
+    void deserializeIntoReuseClearsStaleFields() throws IOException {
+        PlayEvent reuse = new PlayEvent(1, 2, 3, 4);
+        serializer.deserialize(reuse, input(serialize(PlayEvent.malformed("oops"))));
+        assertEquals(0, reuse.playerId);
+        assertEquals(0, reuse.timestamp);
+        assertEquals("oops", reuse.malformed);
+
+        serializer.deserialize(reuse, input(serialize(new PlayEvent(5, 6, 7, 8))));
+        assertNull(reuse.malformed);
+        assertEquals(5, reuse.playerId);
+    }
+
+    @Test
+    void copiesSerializedBytes() throws IOException {
+        PlayEvent event = new PlayEvent(300, 70000, 12, 1546300800000L);
+        DataOutputSerializer out = new DataOutputSerializer(32);
+        serializer.copy(input(serialize(event)), out);
+        assertEquals(event.toString(), serializer.deserialize(input(out.getCopyOfBuffer())).toString());
+    }
+
+    @Test
+    void snapshotRestoresCompatibleSerializer() throws IOException {
+        DataOutputSerializer out = new DataOutputSerializer(64);
+        TypeSerializerSnapshot.writeVersionedSnapshot(out, serializer.snapshotConfiguration());
+        TypeSerializerSnapshot<PlayEvent> restored =
+                TypeSerializerSnapshot.readVersionedSnapshot(input(out.getCopyOfBuffer()), getClass().getClassLoader());
+
+        TypeSerializer<PlayEvent> restoredSerializer = restored.restoreSerializer();
+        assertEquals(PlayEventSerializer.class, restoredSerializer.getClass());
+        TypeSerializerSchemaCompatibility<PlayEvent> compatibility = restored.resolveSchemaCompatibility(serializer);
+        assertTrue(compatibility.isCompatibleAsIs());
+    }
+
+    private void assertRoundTrip(PlayEvent event) throws IOException {
+        PlayEvent copy = serializer.deserialize(input(serialize(event)));
+        assertEquals(event.playerId, copy.playerId);
+        assertEquals(event.songId, copy.songId);
+        assertEquals(event.artistId, copy.artistId);
+        assertEquals(event.timestamp, copy.timestamp);
+        assertEquals(event.malformed, copy.malformed);
+    }
+
+    private byte[] serialize(PlayEvent event) throws IOException {
+        DataOutputSerializer out = new DataOutputSerializer(32);
+        serializer.serialize(event, out);
+        return out.getCopyOfBuffer();
+    }
+
+    private static DataInputDeserializer input(byte[] bytes) {
+        return new DataInputDeserializer(bytes);
+    }
+}
@@ -0,0 +1,66 @@
+package com.dellemc.desdp.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+    private static final long FOREVER = Long.MAX_VALUE;
+
+    @Test
+    void pacesPermitsAtRate() {
+        RateLimiter limiter = new RateLimiter(2000, 1);
+        long start = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            assertTrue(limiter.acquire(FOREVER));
+        }
+        // the first permit is free at once, the other 199 are 0.5 ms apart; allow generous slack for slow machines
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis >= 95, "took " + elapsedMillis + " ms");
+        assertTrue(elapsedMillis < 2000, "took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void savesUpToBurstWhileIdle() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1000, 10);
+        Thread.sleep(100);
+        int acquired = 0;
+        for (int i = 0; i < 100; i++) {
+            if (limiter.acquire(0)) acquired++;
+        }
+        // 100 permits were due while idle, but only the burst of 10 is kept (plus any that fall due during the loop)
+        assertTrue(acquired >= 10 && acquired < 50, acquired + " permits");
+    }
+
+    @Test
+    void givesUpAfterMaxWaitWithoutConsuming() {
+        RateLimiter limiter = new RateLimiter(1, 1);
+        assertTrue(limiter.acquire(0));
+        // the next permit is a second away
+        assertFalse(limiter.acquire(TimeUnit.MILLISECONDS.toNanos(1)));
+        assertFalse(limiter.acquire(0));
+    }
+
+    @Test
+    void rescalesScheduledWaitOnRateChange() {
+        RateLimiter limiter = new RateLimiter(0.1, 1);
+        assertTrue(limiter.acquire(0));
+        // 10 s until the next permit at the old rate, 1 ms at the new one
+        limiter.setRate(10_000, 1);
+        long start = System.nanoTime();
+        assertTrue(limiter.acquire(TimeUnit.SECONDS.toNanos(1)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void rejectsInvalidRates() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(Double.NaN, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(Double.POSITIVE_INFINITY, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiter(100, 0.5));
+    }
+}